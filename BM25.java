@@ -0,0 +1,51 @@
+/**
+ * Scores documents for a query with Okapi BM25. Each matching word adds its
+ * inverse document frequency, which favors rare words, times its count in the
+ * document, damped so repeats add less and less and scaled down for documents
+ * longer than average. A document with many words no longer wins a query
+ * just by being long.
+ */
+public final class BM25 {
+
+	/** How quickly repeats of a word stop adding to the score. */
+	public static final double K1 = 1.2;
+
+	/** How much the score is scaled by document length, from 0 to 1. */
+	public static final double B = 0.75;
+
+	private BM25() {
+	}
+
+	/**
+	 * Returns the inverse document frequency of a word.
+	 *
+	 * @param frequency
+	 *            - number of documents the word is found in
+	 * @param documents
+	 *            - number of documents in the index
+	 * @return weight of the word, always positive
+	 */
+	public static double idf(int frequency, int documents) {
+		return Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+	}
+
+	/**
+	 * Returns the score a word adds to a document.
+	 *
+	 * @param idf
+	 *            - inverse document frequency of the word, see
+	 *            {@link #idf(int, int)}
+	 * @param count
+	 *            - number of times the word is found in the document
+	 * @param length
+	 *            - number of words in the document, or 0 if unknown, which
+	 *            scores it as a document of average length
+	 * @param averageLength
+	 *            - average number of words in a document
+	 * @return score of the word in the document
+	 */
+	public static double score(double idf, int count, int length, double averageLength) {
+		double relative = length > 0 ? length / averageLength : 1;
+		return idf * count * (K1 + 1) / (count + K1 * (1 - B + B * relative));
+	}
+}
@@ -0,0 +1,515 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A query line of words joined by the operators AND, OR and NOT, written in
+ * upper case. NOT applies to the word after it, AND joins words into a clause
+ * that only matches documents holding all of them, and OR joins clauses.
+ * Words next to each other without an operator are ORed, like the words of a
+ * plain query, and a NOT right after a word means AND NOT. So
+ * "cat AND dog OR fish NOT shark" finds documents with both cat and dog, or
+ * with fish but not shark.
+ *
+ * Words in double quotes are a phrase, which a document only matches if it
+ * holds the words next to each other and in order, and NEAR/k joins the words
+ * on either side of it like AND, but only matches if they are found at two
+ * different positions within k of each other in either order, so "a NEAR/3 a"
+ * needs two occurrences of a. A NEAR next to a negated word is
+ * an AND. The distance k is a whole number from 1, so NEAR/0 is not an
+ * operator and is searched as a word.
+ *
+ * A clause without any word that is not negated matches nothing. Each query
+ * word is cleaned like the words of a plain query, and a word that cleans into
+ * several words requires all of them.
+ *
+ * The results of a matching document are added up over every word of the
+ * query that is not negated, as a plain search of those words would.
+ */
+public class BooleanQuery {
+
+	private final ArrayList<Clause> clauses;
+
+	/**
+	 * Creates a query from its clauses.
+	 *
+	 * @param clauses
+	 *            - clauses joined by OR
+	 */
+	private BooleanQuery(ArrayList<Clause> clauses) {
+		this.clauses = clauses;
+	}
+
+	/**
+	 * Parses a query line.
+	 *
+	 * @param line
+	 *            - query line as read from the query file
+	 * @return the query, or null if the line holds no operator or phrase and
+	 *         should be searched as a plain query
+	 */
+	public static BooleanQuery parse(String line) {
+		ArrayList<Clause> clauses = new ArrayList<Clause>();
+		Clause clause = new Clause();
+		String[] parts = line.split("\"", -1);
+		boolean operators = parts.length > 1;
+		boolean joined = true;
+		boolean negated = false;
+		int near = 0;
+		String last = null;
+
+		for (int part = 0; part < parts.length; part++) {
+			boolean quoted = part % 2 == 1;
+			String[] tokens = quoted ? new String[] { parts[part] } : parts[part].trim().split("\\s+");
+			for (String token : tokens) {
+				if (!quoted && token.equals("OR")) {
+					operators = true;
+					clause = addClause(clauses, clause);
+					joined = true;
+					near = 0;
+					last = null;
+				} else if (!quoted && token.equals("AND")) {
+					operators = true;
+					joined = true;
+				} else if (!quoted && token.equals("NOT")) {
+					operators = true;
+					negated = !negated;
+					joined = true;
+				} else if (!quoted && token.matches("NEAR/[1-9]\\d{0,8}")) {
+					operators = true;
+					near = Integer.parseInt(token.substring(5));
+					joined = true;
+				} else {
+					List<String> words = FileParser.parseText(token);
+					if (words.isEmpty()) {
+						continue;
+					}
+					if (!joined) {
+						clause = addClause(clauses, clause);
+						last = null;
+					}
+					if (negated) {
+						if (quoted && words.size() > 1) {
+							clause.excludedPhrases.add(new Phrase(words, 0));
+						} else {
+							clause.excluded.addAll(words);
+						}
+						last = null;
+					} else {
+						if (near > 0 && last != null) {
+							clause.phrases.add(new Phrase(List.of(last, words.get(0)), near));
+						}
+						if (quoted && words.size() > 1) {
+							clause.phrases.add(new Phrase(words, 0));
+						}
+						for (String word : words) {
+							if (!clause.required.contains(word)) {
+								clause.required.add(word);
+							}
+						}
+						last = words.get(words.size() - 1);
+					}
+					negated = false;
+					joined = false;
+					near = 0;
+				}
+			}
+		}
+		addClause(clauses, clause);
+		return operators ? new BooleanQuery(clauses) : null;
+	}
+
+	/**
+	 * Keeps a finished clause if it can match anything, and starts the next
+	 * one.
+	 *
+	 * @param clauses
+	 *            - clauses kept so far
+	 * @param clause
+	 *            - finished clause
+	 * @return new empty clause
+	 */
+	private static Clause addClause(ArrayList<Clause> clauses, Clause clause) {
+		if (!clause.required.isEmpty()) {
+			clauses.add(clause);
+		}
+		return new Clause();
+	}
+
+	/**
+	 * Returns the clauses of the query, joined by OR.
+	 *
+	 * @return clauses of the query
+	 */
+	public List<Clause> getClauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * Returns every distinct word of the query that is not negated, in the
+	 * order they first appear.
+	 *
+	 * @return words whose results are added up
+	 */
+	public List<String> getWords() {
+		LinkedHashSet<String> words = new LinkedHashSet<String>();
+		for (Clause clause : clauses) {
+			words.addAll(clause.required);
+		}
+		return new ArrayList<String>(words);
+	}
+
+	/**
+	 * Searches an index that has no faster way to run the query. Every word
+	 * is searched on its own, and the documents of each clause are found by
+	 * intersecting the documents of its words, rarest word first. Positions
+	 * are then read only for the documents left, to check their phrases.
+	 *
+	 * @param index
+	 *            - index to search
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k sorted results
+	 */
+	public ArrayList<SearchResult> evaluate(SearchableIndex index, boolean exact, boolean ranked, int k) {
+		HashMap<String, ArrayList<SearchResult>> found = new HashMap<String, ArrayList<SearchResult>>();
+		for (Clause clause : clauses) {
+			for (List<String> words : List.of(clause.required, clause.excluded)) {
+				for (String word : words) {
+					if (!found.containsKey(word)) {
+						List<String> query = Collections.singletonList(word);
+						found.put(word, ranked ? index.rankedSearch(query, exact, Integer.MAX_VALUE)
+								: exact ? index.exactSearch(query) : index.search(query));
+					}
+				}
+			}
+		}
+
+		BitSet matched = new BitSet();
+		for (Clause clause : clauses) {
+			ArrayList<String> required = new ArrayList<String>(clause.required);
+			required.sort((a, b) -> Integer.compare(found.get(a).size(), found.get(b).size()));
+			BitSet documents = documents(found.get(required.get(0)));
+			for (int i = 1; i < required.size() && !documents.isEmpty(); i++) {
+				documents.and(documents(found.get(required.get(i))));
+			}
+			for (String word : clause.excluded) {
+				documents.andNot(documents(found.get(word)));
+			}
+			for (Phrase phrase : clause.phrases) {
+				documents.and(contains(index, phrase, exact, documents));
+			}
+			for (Phrase phrase : clause.excludedPhrases) {
+				documents.andNot(contains(index, phrase, exact, documents));
+			}
+			matched.or(documents);
+		}
+
+		DocumentTable documents = index.getDocuments();
+		SearchTotals totals = new SearchTotals(ranked);
+		for (String word : getWords()) {
+			for (SearchResult result : found.get(word)) {
+				int document = result.getDocument();
+				if (matched.get(document)) {
+					totals.add(document, result.getTotalcount(), result.getFirstloc(), result.getScore());
+				}
+			}
+		}
+		return SearchResult.top(documents, totals, k);
+	}
+
+	/**
+	 * Returns the documents of a search as a set of ids.
+	 *
+	 * @param results
+	 *            - results of a search
+	 * @return ids of the documents found
+	 */
+	private static BitSet documents(List<SearchResult> results) {
+		BitSet documents = new BitSet();
+		for (SearchResult result : results) {
+			documents.set(result.getDocument());
+		}
+		return documents;
+	}
+
+	/**
+	 * Finds the documents of a set that hold a phrase.
+	 *
+	 * @param index
+	 *            - index to read the positions from
+	 * @param phrase
+	 *            - phrase to find
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param candidates
+	 *            - ids of the documents to check
+	 * @return ids of the documents holding the phrase
+	 */
+	private static BitSet contains(SearchableIndex index, Phrase phrase, boolean exact, BitSet candidates) {
+		BitSet documents = new BitSet();
+		if (candidates.isEmpty()) {
+			return documents;
+		}
+		ArrayList<Map<Integer, int[]>> found = new ArrayList<Map<Integer, int[]>>();
+		for (String word : phrase.words) {
+			found.add(index.positions(word, exact, candidates));
+		}
+
+		int[][] positions = new int[found.size()][];
+		candidates: for (int document = candidates.nextSetBit(0); document >= 0; document = candidates
+				.nextSetBit(document + 1)) {
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = found.get(i).get(document);
+				if (positions[i] == null) {
+					continue candidates;
+				}
+			}
+			if (phrase.matches(positions)) {
+				documents.set(document);
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Adds sorted positions of a document to a map of the positions of each
+	 * document, merging them with any positions it already holds.
+	 *
+	 * @param positions
+	 *            - sorted positions of each document
+	 * @param document
+	 *            - document id
+	 * @param added
+	 *            - sorted positions to add
+	 */
+	public static void addPositions(Map<Integer, int[]> positions, int document, int[] added) {
+		int[] current = positions.get(document);
+		if (current == null) {
+			positions.put(document, added);
+			return;
+		}
+		int[] merged = Arrays.copyOf(current, current.length + added.length);
+		System.arraycopy(added, 0, merged, current.length, added.length);
+		Arrays.sort(merged);
+		positions.put(document, merged);
+	}
+
+	/**
+	 * Returns the query with its words cleaned and its operators written
+	 * out, used as the query line in the results file.
+	 *
+	 * @return query text
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Clause clause : clauses) {
+			if (text.length() > 0) {
+				text.append(" OR ");
+			}
+			text.append(clause);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Words and phrases that a document must all hold, and words and phrases
+	 * it must not hold.
+	 */
+	public static class Clause {
+
+		private final ArrayList<String> required = new ArrayList<String>();
+		private final ArrayList<String> excluded = new ArrayList<String>();
+		private final ArrayList<Phrase> phrases = new ArrayList<Phrase>();
+		private final ArrayList<Phrase> excludedPhrases = new ArrayList<Phrase>();
+
+		/**
+		 * Returns the words a matching document holds, never empty. The words
+		 * of every phrase the document holds are among them.
+		 *
+		 * @return distinct required words
+		 */
+		public List<String> getRequired() {
+			return Collections.unmodifiableList(required);
+		}
+
+		/**
+		 * Returns the words a matching document does not hold.
+		 *
+		 * @return negated words
+		 */
+		public List<String> getExcluded() {
+			return Collections.unmodifiableList(excluded);
+		}
+
+		/**
+		 * Returns the phrases a matching document holds.
+		 *
+		 * @return required phrases
+		 */
+		public List<Phrase> getPhrases() {
+			return Collections.unmodifiableList(phrases);
+		}
+
+		/**
+		 * Returns the phrases a matching document does not hold.
+		 *
+		 * @return negated phrases
+		 */
+		public List<Phrase> getExcludedPhrases() {
+			return Collections.unmodifiableList(excludedPhrases);
+		}
+
+		/**
+		 * Returns the clause written out, leaving out the required words that
+		 * are part of a phrase.
+		 *
+		 * @return clause text
+		 */
+		@Override
+		public String toString() {
+			ArrayList<String> parts = new ArrayList<String>();
+			words: for (String word : required) {
+				for (Phrase phrase : phrases) {
+					if (phrase.words.contains(word)) {
+						continue words;
+					}
+				}
+				parts.add(word);
+			}
+			for (Phrase phrase : phrases) {
+				parts.add(phrase.toString());
+			}
+			for (String word : excluded) {
+				parts.add("NOT " + word);
+			}
+			for (Phrase phrase : excludedPhrases) {
+				parts.add("NOT " + phrase);
+			}
+			return String.join(" AND ", parts);
+		}
+	}
+
+	/**
+	 * Words that must be found next to each other in order, or for NEAR, two
+	 * words that must be found within a distance of each other in either
+	 * order.
+	 */
+	public static class Phrase {
+
+		private final List<String> words;
+		private final int distance;
+
+		/**
+		 * Creates a phrase.
+		 *
+		 * @param words
+		 *            - cleaned words, two of them if distance is not 0
+		 * @param distance
+		 *            - largest number of positions between the two words, or
+		 *            0 if the words must follow each other in order
+		 */
+		private Phrase(List<String> words, int distance) {
+			this.words = words;
+			this.distance = distance;
+		}
+
+		/**
+		 * Returns the words of the phrase.
+		 *
+		 * @return cleaned words
+		 */
+		public List<String> getWords() {
+			return Collections.unmodifiableList(words);
+		}
+
+		/**
+		 * Returns the largest distance between the words.
+		 *
+		 * @return largest number of positions between the two words, or 0 if
+		 *         the words must follow each other in order
+		 */
+		public int getDistance() {
+			return distance;
+		}
+
+		/**
+		 * Checks whether a document holds the phrase, walking the positions of
+		 * all words at once so each position is looked at once.
+		 *
+		 * @param positions
+		 *            - sorted positions of each word of the phrase in the
+		 *            document, in the order of {@link #getWords()}
+		 * @return true if the document holds the phrase
+		 */
+		public boolean matches(int[][] positions) {
+			if (distance > 0) {
+				// the closest positions of the second word to one of the
+				// first are the last before it and the first after it; the
+				// same position, found when both words match one occurrence,
+				// is not a pair
+				int[] a = positions[0];
+				int[] b = positions[1];
+				int j = 0;
+				for (int i = 0; i < a.length; i++) {
+					while (j < b.length && b[j] < a[i]) {
+						j++;
+					}
+					if (j > 0 && a[i] - b[j - 1] <= distance) {
+						return true;
+					}
+					int after = j;
+					while (after < b.length && b[after] == a[i]) {
+						after++;
+					}
+					if (after < b.length && b[after] - a[i] <= distance) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			int[] next = new int[positions.length];
+			starts: for (int start : positions[0]) {
+				for (int w = 1; w < positions.length; w++) {
+					int[] word = positions[w];
+					while (next[w] < word.length && word[next[w]] < start + w) {
+						next[w]++;
+					}
+					if (next[w] == word.length) {
+						return false;
+					}
+					if (word[next[w]] != start + w) {
+						continue starts;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the phrase in double quotes, or the two words joined by
+		 * NEAR.
+		 *
+		 * @return phrase text
+		 */
+		@Override
+		public String toString() {
+			if (distance > 0) {
+				return words.get(0) + " NEAR/" + distance + " " + words.get(1);
+			}
+			return "\"" + String.join(" ", words) + "\"";
+		}
+	}
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each document path to a compact int id, so postings and search results
+ * only need to store the id. Paths are looked up again only when results or
+ * the index are written out.
+ *
+ * Ids are handed out in the order paths are first added, starting at 0. The
+ * table can be shared by several indexes, in which case their ids agree and
+ * merging them needs no translation.
+ *
+ * The table also keeps the number of words in each document, set once the
+ * document is parsed, for ranking search results by {@link BM25}.
+ */
+public class DocumentTable {
+
+	/** Maps a path to its id. */
+	private final ConcurrentHashMap<String, Integer> ids;
+
+	/** Maps an id back to its path, only the first size entries are used. */
+	private volatile String[] paths;
+
+	/** Number of ids handed out. */
+	private volatile int size;
+
+	/** Maps an id to the number of words in the document, 0 if unknown. */
+	private volatile int[] lengths;
+
+	/** Sum of the known document lengths. */
+	private long totalLength;
+
+	/** Number of documents with a known length. */
+	private int measured;
+
+	/**
+	 * Creates an empty document table.
+	 */
+	public DocumentTable() {
+		ids = new ConcurrentHashMap<>();
+		paths = new String[16];
+		lengths = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * Returns the id of a path, adding it to the table if it has not been
+	 * seen before.
+	 *
+	 * @param path
+	 *            - String representation of a files Path
+	 * @return id of the path
+	 */
+	public int add(String path) {
+		Integer id = ids.get(path);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this) {
+			id = ids.get(path);
+			if (id == null) {
+				String[] grown = paths;
+				if (size == grown.length) {
+					grown = Arrays.copyOf(grown, grown.length * 2);
+					lengths = Arrays.copyOf(lengths, grown.length);
+				}
+				id = size;
+				grown[id] = path;
+				paths = grown;
+				size = id + 1;
+				ids.put(path, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of a path without adding it.
+	 *
+	 * @param path
+	 *            - String representation of a files Path
+	 * @return id of the path, or -1 if the path is not in the table
+	 */
+	public int getId(String path) {
+		Integer id = ids.get(path);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the path stored for an id.
+	 *
+	 * @param id
+	 *            - document id
+	 * @return path of the document
+	 */
+	public String getPath(int id) {
+		return paths[id];
+	}
+
+	/**
+	 * Sets the number of words in a document, replacing any length set
+	 * before.
+	 *
+	 * @param id
+	 *            - document id
+	 * @param length
+	 *            - number of words, or 0 if unknown or removed
+	 */
+	public synchronized void setLength(int id, int length) {
+		int[] current = lengths;
+		if (current[id] > 0) {
+			totalLength -= current[id];
+			measured--;
+		}
+		if (length > 0) {
+			totalLength += length;
+			measured++;
+		}
+		current[id] = Math.max(0, length);
+		lengths = current;
+	}
+
+	/**
+	 * Returns the number of words in a document.
+	 *
+	 * @param id
+	 *            - document id
+	 * @return number of words, or 0 if unknown
+	 */
+	public int getLength(int id) {
+		return lengths[id];
+	}
+
+	/**
+	 * Returns the average number of words of the documents with a known
+	 * length.
+	 *
+	 * @return average length, or 1 if no length is known
+	 */
+	public synchronized double averageLength() {
+		return measured == 0 ? 1 : (double) totalLength / measured;
+	}
+
+	/**
+	 * Returns the number of documents with a known length. Removed documents
+	 * keep their ids but not their length, so unlike {@link #size()} this
+	 * only counts documents still in the index. Used as the number of
+	 * documents when weighing words by {@link BM25}.
+	 *
+	 * @return number of documents with a known length
+	 */
+	public synchronized int liveCount() {
+		return measured;
+	}
+
+	/**
+	 * Returns the number of documents in the table. Valid ids are 0 up to
+	 * but not including this value.
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+}
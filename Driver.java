@@ -54,7 +54,6 @@ public class Driver {
 		boolean multid= false;
 		int defthreads = 5;
 		ArgumentParser parser = new ArgumentParser(args);
-		InvertedIndex invertedIndex = new InvertedIndex();
 
 		
 		if (parser.numFlags() == 0) {
@@ -86,8 +85,198 @@ public class Driver {
 //			System.out.println("You are running single threaded");
 		}
 
-		MultiThreadTraverserBuilder buildmydirect = new MultiThreadTraverserBuilder(defthreads);
-		if (parser.hasFlag("-d")) {		
+		String lockmode = IndexLock.SIMPLE;
+		if (parser.hasValue("-lock")) {
+			lockmode = parser.getValue("-lock");
+		}
+		IndexLock indexlock;
+		try {
+			indexlock = IndexLock.create(lockmode);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Improper -lock flag value, running with the simple lock");
+			lockmode = IndexLock.SIMPLE;
+			indexlock = IndexLock.create(lockmode);
+		}
+		InvertedIndex invertedIndex = new InvertedIndex(new DocumentTable(), indexlock);
+
+		if (parser.hasFlag("-mmap")) {
+			long threshold = IndexBuilder.DEFAULT_MAPPED_THRESHOLD;
+			if (parser.hasValue("-mmap")) {
+				try {
+					threshold = Long.parseLong(parser.getValue("-mmap"));
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -mmap flag value, mapping files of at least "
+							+ threshold + " bytes");
+				}
+			}
+			IndexBuilder.setMappedThreshold(threshold);
+		}
+
+		String execmode = WorkExecutor.QUEUE;
+		if (parser.hasValue("-exec")) {
+			execmode = parser.getValue("-exec");
+		}
+		WorkExecutor workers;
+		try {
+			workers = WorkExecutor.create(execmode, defthreads);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Improper -exec flag value, running with the work queue");
+			execmode = WorkExecutor.QUEUE;
+			workers = WorkExecutor.create(execmode, defthreads);
+		}
+		WorkExecutor listers = workers;
+		if (parser.hasValue("-listexec") && !parser.getValue("-listexec").equals(execmode)) {
+			try {
+				listers = WorkExecutor.create(parser.getValue("-listexec"), defthreads);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Improper -listexec flag value, listing directories with -exec");
+			}
+		}
+
+		MultiThreadTraverserBuilder buildmydirect = new MultiThreadTraverserBuilder(workers, listers, defthreads);
+		int mergethreads = 1;
+		if (parser.hasFlag("-merge")) {
+			mergethreads = defthreads;
+			if (parser.hasValue("-merge")) {
+				try {
+					mergethreads = Integer.parseInt(parser.getValue("-merge"));
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -merge flag value, merging with " + defthreads + " threads");
+				}
+			}
+		}
+		buildmydirect.setMergeThreads(mergethreads);
+		SearchableIndex searchIndex = invertedIndex;
+		if (parser.hasFlag("-spill") && parser.hasValue("-d")) {
+			long budget = SpillingIndexBuilder.DEFAULT_BUDGET;
+			if (parser.hasValue("-spill")) {
+				try {
+					budget = Long.parseLong(parser.getValue("-spill")) << 20;
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -spill flag value, spilling every "
+							+ (budget >> 20) + " MB");
+				}
+			}
+			Path spillpath = Paths.get(parser.hasValue("-save") ? parser.getValue("-save")
+					: "index.bin").toAbsolutePath().normalize();
+			SpillingIndexBuilder spiller = new SpillingIndexBuilder(budget);
+			try {
+				spiller.build(Paths.get(parser.getValue("-d")), spillpath);
+				if (parser.hasFlag("-stats")) {
+					System.out.println(spiller);
+				}
+				if (parser.hasFlag("-mapped")) {
+					searchIndex = new MappedIndex(spillpath);
+				} else {
+					invertedIndex.load(spillpath);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to build index " + spillpath);
+				return;
+			} finally {
+				buildmydirect.shutdown();
+			}
+		} else if (parser.hasFlag("-segments") && parser.hasValue("-d")) {
+			long flushbytes = SegmentedIndex.DEFAULT_FLUSH_BYTES;
+			if (parser.hasValue("-segments")) {
+				try {
+					flushbytes = Long.parseLong(parser.getValue("-segments")) << 20;
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -segments flag value, sealing segments of "
+							+ (flushbytes >> 20) + " MB");
+				}
+			}
+			SegmentedIndex segmented = new SegmentedIndex(invertedIndex.getDocuments(), flushbytes,
+					SegmentedIndex.DEFAULT_MERGE_FACTOR);
+			try {
+				ArrayList<Path> files = DirectoryTraverser.traverse(Paths.get(parser.getValue("-d")));
+				if (multid) {
+					buildmydirect.addFiles(files, segmented);
+				} else {
+					for (Path file : files) {
+						try {
+							segmented.addAll(IndexBuilder.buildFile(segmented.getDocuments(), file));
+						} catch (IOException | NullPointerException e) {
+							System.out.println("Issue reading file");
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to traverse " + parser.getValue("-d"));
+				return;
+			} finally {
+				buildmydirect.shutdown();
+			}
+			segmented.flush();
+			segmented.awaitMerges();
+			segmented.close();
+			if (parser.hasFlag("-stats")) {
+				System.out.println(segmented);
+			}
+			searchIndex = segmented;
+		} else if (parser.hasFlag("-mapped")) {
+			Path mappedpath = Paths.get(parser.hasValue("-mapped") ? parser.getValue("-mapped")
+					: "index.bin").toAbsolutePath().normalize();
+			try {
+				searchIndex = new MappedIndex(mappedpath);
+			} catch (IOException e) {
+				System.out.println("Unable to map index from " + mappedpath);
+				return;
+			} finally {
+				buildmydirect.shutdown();
+			}
+		} else if (parser.hasFlag("-load")) {
+			Path loadpath = Paths.get(parser.hasValue("-load") ? parser.getValue("-load")
+					: "index.bin").toAbsolutePath().normalize();
+			try {
+				invertedIndex.load(loadpath);
+			} catch (IOException e) {
+				System.out.println("Unable to load index from " + loadpath);
+				return;
+			} finally {
+				buildmydirect.shutdown();
+			}
+		} else if (parser.hasFlag("-update") && parser.hasValue("-d")) {
+			Path updatepath = Paths.get(parser.hasValue("-update") ? parser.getValue("-update")
+					: "index.bin").toAbsolutePath().normalize();
+			IncrementalIndexer updater = new IncrementalIndexer(multid ? buildmydirect : null);
+			try {
+				updater.update(invertedIndex, Paths.get(parser.getValue("-d")), updatepath);
+				if (parser.hasFlag("-stats")) {
+					System.out.println(updater);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to update index " + updatepath);
+				return;
+			} finally {
+				buildmydirect.shutdown();
+			}
+		} else if (parser.hasFlag("-pipeline") && parser.hasValue("-d")) {
+			int[] stagethreads = { 2, defthreads, 2, IndexPipeline.DEFAULT_CAPACITY };
+			if (parser.hasValue("-pipeline")) {
+				String[] values = parser.getValue("-pipeline").split(",");
+				try {
+					for (int i = 0; i < values.length && i < stagethreads.length; i++) {
+						stagethreads[i] = Integer.parseInt(values[i].trim());
+					}
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -pipeline flag value, running with "
+							+ "readers,tokenizers,indexers,capacity = 2," + defthreads + ",2,"
+							+ IndexPipeline.DEFAULT_CAPACITY);
+					stagethreads = new int[] { 2, defthreads, 2, IndexPipeline.DEFAULT_CAPACITY };
+				}
+			}
+			IndexPipeline pipeline = new IndexPipeline(stagethreads[0], stagethreads[1],
+					stagethreads[2], stagethreads[3]);
+			pipeline.setMergeThreads(mergethreads);
+			buildmydirect.shutdown();
+			if (!pipeline.build(Paths.get(parser.getValue("-d")), invertedIndex)) {
+				System.out.println("Unable to build index from " + parser.getValue("-d"));
+			}
+			if (parser.hasFlag("-stats")) {
+				System.out.println(pipeline);
+			}
+		} else if (parser.hasFlag("-d")) {		
 			if (parser.hasValue("-d")) {
 				if (multid == true){
 					System.out.println("multithreaded");
@@ -103,6 +292,8 @@ public class Driver {
 						IndexBuilder.build(invertedIndex, myfiles);
 					} catch (IOException e) {
 						e.printStackTrace();
+					} finally {
+						buildmydirect.shutdown();
 					}
 
 				}
@@ -115,27 +306,106 @@ public class Driver {
 			}
 		} else {
 			System.out
-			.println("Please enter a valid flag for your directory: -d");
+			.println("Please enter a valid flag for your directory: -d, or an index to load: -load or -mapped");
 			return;
 		}
 
+		// -segments and -mapped search their own index instead of invertedIndex
+		String indexmode = searchIndex instanceof SegmentedIndex ? "-segments"
+				: searchIndex == invertedIndex ? null : "-mapped";
+		if (parser.hasFlag("-save") && !parser.hasFlag("-spill")) {
+			Path savepath = Paths.get(parser.hasValue("-save") ? parser.getValue("-save")
+					: "index.bin").toAbsolutePath().normalize();
+			if (searchIndex instanceof SegmentedIndex) {
+				try {
+					((SegmentedIndex) searchIndex).toInvertedIndex().save(savepath);
+				} catch (IOException e) {
+					System.out.println("Unable to save index to " + savepath);
+				}
+			} else if (indexmode != null) {
+				System.out.println("Ignoring -save with " + indexmode + ", the index is already saved");
+			} else {
+				try {
+					invertedIndex.save(savepath);
+				} catch (IOException e) {
+					System.out.println("Unable to save index to " + savepath);
+				}
+			}
+		}
+
 		if (parser.hasFlag("-i")) {
 			if (parser.hasValue("-i")) {
 				// print to this value
-				invertedIndex.print(parser.getValue("-i"));
+				searchIndex.print(parser.getValue("-i"));
 			} else {
 				// print index.txt
 				Path defpath = Paths.get(("index.txt")).toAbsolutePath()
 						.normalize();
-				invertedIndex.print(defpath.toString());
+				searchIndex.print(defpath.toString());
 			}
 		} else {
 			System.out
 			.println("Please enter a output flag: -i if you wish to get an output file.");
 
 		}
+		if (parser.hasFlag("-prefix") && indexmode != null) {
+			System.out.println("Ignoring -prefix with " + indexmode + ", which has no prefix index");
+		} else if (parser.hasFlag("-prefix")) {
+			int prefixlength = 2;
+			if (parser.hasValue("-prefix")) {
+				try {
+					prefixlength = Integer.parseInt(parser.getValue("-prefix"));
+				} catch (NumberFormatException e) {
+					System.out.println("Improper -prefix flag value, precomputing prefixes of up to "
+							+ prefixlength + " letters");
+				}
+			}
+			invertedIndex.setPrefixLength(prefixlength);
+		}
+		if (parser.hasFlag("-prefixcache") && indexmode != null) {
+			System.out.println("Ignoring -prefixcache with " + indexmode + ", which has no prefix cache");
+		} else if (parser.hasValue("-prefixcache")) {
+			try {
+				invertedIndex.setPrefixCacheSize(Integer.parseInt(parser.getValue("-prefixcache")));
+			} catch (NumberFormatException e) {
+				System.out.println("Improper -prefixcache flag value, caching up to "
+						+ PrefixCache.DEFAULT_CAPACITY + " prefixes");
+			}
+		}
+
 		QueryParser searchResultMap = new QueryParser();
-		MultiQueryParser ResultMap = new MultiQueryParser(defthreads);
+		MultiQueryParser ResultMap = new MultiQueryParser(WorkExecutor.create(execmode, defthreads),
+				IndexLock.create(lockmode));
+		searchResultMap.setExact(parser.hasFlag("-exact"));
+		ResultMap.setExact(parser.hasFlag("-exact"));
+		searchResultMap.setOperators(parser.hasFlag("-boolean"));
+		ResultMap.setOperators(parser.hasFlag("-boolean"));
+		if (parser.hasFlag("-rank")) {
+			if (parser.hasValue("-rank") && !parser.getValue("-rank").equalsIgnoreCase("bm25")) {
+				System.out.println("Improper -rank flag value, ranking results with bm25");
+			}
+			searchResultMap.setRanked(true);
+			ResultMap.setRanked(true);
+		}
+		if (parser.hasValue("-k")) {
+			try {
+				int limit = Integer.parseInt(parser.getValue("-k"));
+				searchResultMap.setLimit(limit);
+				ResultMap.setLimit(limit);
+			} catch (NumberFormatException e) {
+				System.out.println("Improper -k flag value, writing every result");
+			}
+		}
+		if (parser.hasValue("-cache")) {
+			try {
+				int entries = Integer.parseInt(parser.getValue("-cache"));
+				searchResultMap.setCacheSize(entries);
+				ResultMap.setCacheSize(entries);
+			} catch (NumberFormatException e) {
+				System.out.println("Improper -cache flag value, caching up to "
+						+ QueryCache.DEFAULT_CAPACITY + " query lines");
+			}
+		}
 
 
 		if (parser.hasFlag("-q")) {
@@ -144,15 +414,14 @@ public class Driver {
 						.toAbsolutePath().normalize();
 				if (multid == true){
 					try {
-						ResultMap.searchHelp(invertedIndex, querypath);
-						ResultMap.shutdown();
+						ResultMap.searchHelp(searchIndex, querypath);
 					} catch (IOException e) {
 						System.out.println("Problem with your query file, please check the path");
 					}
 				}
 				else if (multid==false){
 					try {
-						searchResultMap.SearchHelp(invertedIndex, querypath);
+						searchResultMap.SearchHelp(searchIndex, querypath);
 					} catch (IOException e) {
 						System.out.println("Problem with your query file, please check the path");
 					}
@@ -163,6 +432,7 @@ public class Driver {
 			}
 			
 		}
+		ResultMap.shutdown();
 		if (parser.hasFlag("-r")) {
 			if (parser.hasValue("-r")) {
 				if (multid==true){
@@ -190,6 +460,16 @@ public class Driver {
 			
 		}
 
+		if (parser.hasFlag("-lock") && parser.hasFlag("-stats")) {
+			System.out.println("Index lock (" + lockmode + ") " + indexlock.getCounters());
+		}
+		if (parser.hasFlag("-cache") && parser.hasFlag("-stats")) {
+			System.out.println("Query cache " + (multid ? ResultMap.getCache() : searchResultMap.getCache()));
+		}
+		if (parser.hasFlag("-prefixcache") && parser.hasFlag("-stats") && searchIndex == invertedIndex) {
+			System.out.println("Prefix cache " + invertedIndex.getPrefixCache());
+		}
+
 	}
 
 }
\ No newline at end of file
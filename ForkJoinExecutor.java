@@ -0,0 +1,52 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs work requests on a {@link ForkJoinPool}. Every worker thread has its
+ * own deque: work submitted from a worker, such as the files found while
+ * listing a directory, goes onto that worker's deque, and idle workers steal
+ * from the others. There is no shared queue for all threads to contend on.
+ */
+public class ForkJoinExecutor implements WorkExecutor {
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Starts a pool with the given number of worker threads.
+	 *
+	 * @param threads
+	 *            - number of worker threads
+	 */
+	public ForkJoinExecutor(int threads) {
+		pool = new ForkJoinPool(threads);
+	}
+
+	@Override
+	public void execute(Runnable r) {
+		pool.execute(() -> {
+			try {
+				r.run();
+			} catch (RuntimeException ex) {
+				System.err.println("Warning: Work queue encountered an " +
+						"exception while running.");
+			}
+		});
+	}
+
+	/**
+	 * Waits until the pool is quiescent. The calling thread helps run pending
+	 * work while it waits.
+	 */
+	@Override
+	public void finish() {
+		while (!pool.awaitQuiescence(1, TimeUnit.SECONDS)) {
+			// keep waiting, work is still running
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		finish();
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps a saved index up to date with a directory by re-parsing only the .txt
+ * files that were added or changed since the last run. Postings of changed and
+ * deleted files are dropped from the index first.
+ *
+ * A file whose size and last modified time match its {@link IndexManifest}
+ * entry is skipped without being read. If only the modified time differs, the
+ * file is hashed and skipped when its contents are the same. A file is only
+ * recorded in the manifest once its words were added, so a file that cannot
+ * be parsed is tried again on the next run.
+ */
+public class IncrementalIndexer {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final MultiThreadTraverserBuilder builder;
+	private int added;
+	private int changed;
+	private int deleted;
+	private int unchanged;
+
+	/**
+	 * Creates an indexer that parses files on the calling thread, or on the
+	 * worker threads of a builder.
+	 *
+	 * @param builder
+	 *            - builder to parse files with, or null to parse them on the
+	 *            calling thread
+	 */
+	public IncrementalIndexer(MultiThreadTraverserBuilder builder) {
+		this.builder = builder;
+	}
+
+	/**
+	 * Loads a saved index and its manifest, brings the index up to date with a
+	 * directory and saves both again. If either file is missing, every file in
+	 * the directory is parsed.
+	 *
+	 * @param index
+	 *            - empty index to load into and update
+	 * @param directory
+	 *            - directory of .txt files the index covers
+	 * @param indexfile
+	 *            - saved index to update, created if missing
+	 * @throws IOException
+	 *             if the directory cannot be traversed, or the index or
+	 *             manifest cannot be read or written
+	 */
+	public void update(InvertedIndex index, Path directory, Path indexfile) throws IOException {
+		Path manifestfile = IndexManifest.pathFor(indexfile);
+		IndexManifest manifest = new IndexManifest();
+		if (Files.exists(indexfile) && Files.exists(manifestfile)) {
+			manifest = IndexManifest.read(manifestfile);
+			index.load(indexfile);
+		}
+
+		DocumentTable documents = index.getDocuments();
+		BitSet removed = new BitSet(documents.size());
+		ArrayList<Path> parse = new ArrayList<Path>();
+		HashMap<Path, IndexManifest.Entry> parsed = new HashMap<Path, IndexManifest.Entry>();
+		HashSet<String> found = new HashSet<String>();
+
+		for (Path listed : DirectoryTraverser.traverse(directory)) {
+			// keyed the same however the directory was spelled on the command line
+			Path file = listed.toAbsolutePath().normalize();
+			String path = file.toString();
+			found.add(path);
+			IndexManifest.Entry entry = manifest.get(path);
+
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				long size = attributes.size();
+				long modified = attributes.lastModifiedTime().toMillis();
+				if (entry != null && entry.getSize() == size && entry.getModified() == modified) {
+					unchanged++;
+					continue;
+				}
+
+				String hash = IndexManifest.hash(file);
+				IndexManifest.Entry current = new IndexManifest.Entry(size, modified, hash);
+				if (entry != null && entry.getSize() == size && entry.getHash().equals(hash)) {
+					manifest.put(path, current);
+					unchanged++;
+					continue;
+				}
+				parsed.put(file, current);
+			} catch (IOException e) {
+				System.out.println("Issue reading file " + file);
+				found.remove(path);
+				continue;
+			}
+
+			if (entry == null) {
+				added++;
+			} else {
+				changed++;
+				remove(removed, documents, path);
+			}
+			parse.add(file);
+		}
+
+		for (String path : new ArrayList<String>(manifest.paths())) {
+			if (!found.contains(path)) {
+				deleted++;
+				manifest.remove(path);
+				remove(removed, documents, path);
+			}
+		}
+
+		logger.debug("Re-parsing {} files, removing {} documents", parse.size(), removed.cardinality());
+		if (!removed.isEmpty()) {
+			index.removeAll(removed);
+		}
+		ArrayList<Path> failed = builder == null ? IndexBuilder.build(index, parse)
+				: builder.addFiles(parse, index);
+		for (Path file : failed) {
+			parsed.remove(file);
+			// the old entry, if any, no longer describes what is indexed
+			manifest.remove(file.toString());
+		}
+		for (Map.Entry<Path, IndexManifest.Entry> entry : parsed.entrySet()) {
+			manifest.put(entry.getKey().toString(), entry.getValue());
+		}
+		if (!failed.isEmpty()) {
+			logger.debug("Leaving {} unreadable files out of the manifest", failed.size());
+		}
+
+		index.save(indexfile);
+		manifest.write(manifestfile);
+	}
+
+	/**
+	 * Marks the document of a path for removal, if it is in the index.
+	 *
+	 * @param removed
+	 *            - ids of the documents to remove
+	 * @param documents
+	 *            - document table of the index
+	 * @param path
+	 *            - path of the document
+	 */
+	private static void remove(BitSet removed, DocumentTable documents, String path) {
+		int document = documents.getId(path);
+		if (document >= 0) {
+			removed.set(document);
+			documents.setLength(document, 0);
+		}
+	}
+
+	/**
+	 * Returns how many files were added, changed, deleted and left alone by
+	 * the last update.
+	 *
+	 * @return summary of the update
+	 */
+	@Override
+	public String toString() {
+		return "Updated index: " + added + " added, " + changed + " changed, " + deleted
+				+ " deleted, " + unchanged + " unchanged";
+	}
+}
@@ -1,10 +1,16 @@
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Class that Builds an inverted index from text files
@@ -12,56 +18,201 @@ import java.util.List;
  */
 public class IndexBuilder {
 
+	/** Number of chars read from a file at a time. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Largest part of a file mapped into memory at once. */
+	private static final long MAPPED_REGION = 1L << 30;
+
+	/** Default size at which files are memory-mapped when mapping is enabled. */
+	public static final long DEFAULT_MAPPED_THRESHOLD = 1L << 20;
+
+	/** Files of at least this many bytes are memory-mapped. */
+	private static volatile long mappedThreshold = Long.MAX_VALUE;
+
 	/**
 	 * "Builds an index from a list of text files."
 	 * 
 	 * @param myfiles
-	 * @return
+	 * @return files that could not be read, whose words were not added
 	 */
-	public static void build(InvertedIndex index, ArrayList<Path> files) {
+	public static ArrayList<Path> build(InvertedIndex index, ArrayList<Path> files) {
+		ArrayList<Path> failed = new ArrayList<Path>();
 		for (Path file : files) {
-			build(index, file);
+			if (!build(index, file)) {
+				failed.add(file);
+			}
 		}
+		return failed;
 	}
 
 	/**
-	 * Index Helper, Parses .txt file line by line and calls InvertedIndex.add()
-	 * to add word from file to index
+	 * Index Helper, Parses .txt file in chunks with a {@link WordTokenizer}
+	 * and calls InvertedIndex.add() to add word from file to index
 	 * 
 	 * @param index
 	 * @param file
+	 * @return true if the words of the file were added, false if it could
+	 *         not be read
+	 */
+	public static boolean build(InvertedIndex index, Path file) {
+
+		try {
+			index.addAll(buildFile(index.getDocuments(), file));
+			return true;
+		} catch (IOException | NullPointerException e) {
+			System.out.println("Issue reading file");
+			return false;
+		}
+
+	}
+
+	/**
+	 * Parses a single .txt file into an index of its own. The file is added to
+	 * the document table even if it cannot be read.
+	 * 
+	 * @param documents
+	 *            - document table to add the file to, shared by the new index
+	 * @param file
+	 *            - UTF-8 text file
+	 * @return index holding only the words of the file
 	 * @throws IOException
+	 *             if the file cannot be read or is not valid UTF-8
+	 */
+	public static InvertedIndex buildFile(DocumentTable documents, Path file) throws IOException {
+		int document = documents.add(file.toString());
+		InvertedIndex fileindex = new InvertedIndex(documents);
+		WordTokenizer tokenizer = new WordTokenizer(
+				(word, wordlocation) -> fileindex.append(word, document, wordlocation));
+
+		tokenize(file, tokenizer);
+		tokenizer.finish();
+		fileindex.appended();
+		documents.setLength(document, tokenizer.count());
+		return fileindex;
+	}
+
+	/**
+	 * Sets the file size at which files are memory-mapped instead of read
+	 * through a {@link BufferedReader}. Mapping avoids copying large files
+	 * through the Java heap, but costs more than it saves on small files.
+	 * 
+	 * @param bytes
+	 *            - smallest file size to map, or {@link Long#MAX_VALUE} to
+	 *            never map files
 	 */
-	public static void build(InvertedIndex index, Path file) {
+	public static void setMappedThreshold(long bytes) {
+		mappedThreshold = bytes;
+	}
 
-//		String[] filewords;
+	/**
+	 * Returns the file size at which files are memory-mapped, see
+	 * {@link #setMappedThreshold(long)}.
+	 * 
+	 * @return smallest file size mapped
+	 */
+	public static long getMappedThreshold() {
+		return mappedThreshold;
+	}
 
+	/**
+	 * Feeds a file to a tokenizer a few chars at a time, memory-mapping it if
+	 * it is at least {@link #getMappedThreshold()} bytes, so the whole file is
+	 * never held on the heap. The tokenizer is not finished.
+	 * 
+	 * @param file
+	 *            - UTF-8 text file
+	 * @param tokenizer
+	 *            - tokenizer to feed
+	 * @throws IOException
+	 *             if the file cannot be read or is not valid UTF-8
+	 */
+	public static void tokenize(Path file, WordTokenizer tokenizer) throws IOException {
+		if (Files.size(file) >= mappedThreshold) {
+			tokenizeMapped(file, tokenizer);
+		} else {
+			tokenizeBuffered(file, tokenizer);
+		}
+	}
+
+	/**
+	 * Reads a file through a {@link BufferedReader} and feeds it to a
+	 * tokenizer.
+	 * 
+	 * @param file
+	 *            - UTF-8 text file
+	 * @param tokenizer
+	 *            - tokenizer to feed
+	 * @throws IOException
+	 *             if the file cannot be read or is not valid UTF-8
+	 */
+	private static void tokenizeBuffered(Path file, WordTokenizer tokenizer) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(file, Charset.forName("UTF-8"))
 				) {
-			InvertedIndex fileindex = new InvertedIndex();
-			String line;
-			int wordlocation = 1;
-			while ((line = reader.readLine()) != null) {
-				if (line.isEmpty()) {
-					continue;
-				}
-
-				// temp = FileParser.parseText(line);
-				line = FileParser.cleanText(line);
-				// filewords = line.split("\\s");
-				for (String w : line.split("\\s")) {
-					if (w.length() > 0) {
-						fileindex.add(w, file.toString(), wordlocation);
-						wordlocation++;
+			char[] buffer = new char[BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				tokenizer.feed(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Memory-maps a file and decodes it straight from the mapped bytes into a
+	 * small reusable char buffer that is fed to a tokenizer. Files larger than
+	 * {@link #MAPPED_REGION} are mapped one region at a time.
+	 * 
+	 * @param file
+	 *            - UTF-8 text file
+	 * @param tokenizer
+	 *            - tokenizer to feed
+	 * @throws IOException
+	 *             if the file cannot be read or is not valid UTF-8
+	 */
+	private static void tokenizeMapped(Path file, WordTokenizer tokenizer) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+			CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+			long size = channel.size();
+			long offset = 0;
+
+			do {
+				long length = Math.min(size - offset, MAPPED_REGION);
+				boolean last = offset + length == size;
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+				CoderResult result;
+				do {
+					result = decoder.decode(bytes, chars, last);
+					if (result.isError()) {
+						result.throwException();
 					}
+					feed(chars, tokenizer);
+				} while (result.isOverflow());
 
-				}
+				// a char split across two regions is decoded with the next one
+				offset += bytes.position();
+			} while (offset < size);
 
+			while (decoder.flush(chars).isOverflow()) {
+				feed(chars, tokenizer);
 			}
-			index.addAll(fileindex);
-		} catch (IOException | NullPointerException e) {
-			System.out.println("Issue reading file");
+			feed(chars, tokenizer);
 		}
+	}
 
+	/**
+	 * Feeds the decoded chars in a buffer to a tokenizer and empties the
+	 * buffer.
+	 * 
+	 * @param chars
+	 *            - buffer in write mode
+	 * @param tokenizer
+	 *            - tokenizer to feed
+	 */
+	private static void feed(CharBuffer chars, WordTokenizer tokenizer) {
+		chars.flip();
+		tokenizer.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+		chars.clear();
 	}
 }
@@ -0,0 +1,253 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an index file written by {@link IndexFileWriter} one term at a time,
+ * in sorted order. The document table is read when the file is opened.
+ */
+public class IndexFileReader implements Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final DocumentTable documents;
+	private final int terms;
+	private int read;
+	private String term;
+	private int termDocuments;
+	private byte[] postings;
+	private int postingsLength;
+
+	/**
+	 * Opens an index file and reads its header and document table.
+	 *
+	 * @param path
+	 *            - index file to read
+	 * @throws IOException
+	 *             if the file cannot be read or is not an index file
+	 */
+	public IndexFileReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(1 << 16);
+		try {
+			fill(0, IndexFileWriter.HEADER_SIZE);
+			if (buffer.getInt() != IndexFileWriter.MAGIC) {
+				throw new IOException(path + " is not an index file");
+			}
+			int version = buffer.getInt();
+			if (version < 1 || version > IndexFileWriter.VERSION) {
+				throw new IOException("Unsupported index file version " + version);
+			}
+			int documentCount = buffer.getInt();
+			terms = buffer.getInt();
+			buffer.getLong();
+			long documentTable = buffer.getLong();
+
+			documents = new DocumentTable();
+			channel.position(documentTable);
+			buffer.clear().flip();
+			for (int i = 0; i < documentCount; i++) {
+				documents.add(readString(readVarint()));
+				if (version > 1) {
+					documents.setLength(i, readVarint());
+				}
+			}
+
+			channel.position(IndexFileWriter.HEADER_SIZE);
+			buffer.clear().flip();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		read = 0;
+		postings = new byte[1024];
+	}
+
+	/**
+	 * Returns the document table stored in the file. Document ids in the
+	 * postings refer to this table.
+	 *
+	 * @return document table
+	 */
+	public DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Returns the number of terms in the file.
+	 *
+	 * @return number of terms
+	 */
+	public int getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Moves to the next term.
+	 *
+	 * @return false if every term has been read
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public boolean next() throws IOException {
+		if (read == terms) {
+			term = null;
+			return false;
+		}
+		read++;
+		term = readString(readVarint());
+		termDocuments = readVarint();
+		postingsLength = readVarint();
+		if (postingsLength > postings.length) {
+			postings = new byte[Math.max(postingsLength, postings.length * 2)];
+		}
+		readBytes(postings, postingsLength);
+		return true;
+	}
+
+	/**
+	 * Returns the current term.
+	 *
+	 * @return term, or null before the first or after the last call to
+	 *         {@link #next()}
+	 */
+	public String getTerm() {
+		return term;
+	}
+
+	/**
+	 * Decodes the postings of the current term.
+	 *
+	 * @param documentMap
+	 *            - maps the ids of {@link #getDocuments()} to the ids wanted,
+	 *            or null to keep them. Adding is fastest if the map keeps the
+	 *            ids in the same order.
+	 * @return postings of the current term
+	 */
+	public PostingList getPostings(int[] documentMap) {
+		return decode(postings, 0, postingsLength, documentMap);
+	}
+
+	/**
+	 * Decodes the postings of a term.
+	 *
+	 * @param bytes
+	 *            - encoded postings
+	 * @param offset
+	 *            - index of the first byte
+	 * @param length
+	 *            - number of bytes of the postings
+	 * @param documentMap
+	 *            - maps stored document ids to the ids wanted, or null to
+	 *            keep them
+	 * @return decoded postings
+	 */
+	public static PostingList decode(byte[] bytes, int offset, int length, int[] documentMap) {
+		PostingList list = new PostingList(0, length);
+		list.addEncoded(bytes, offset, length, documentMap);
+		return list;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads a varint from the file.
+	 *
+	 * @return value
+	 * @throws IOException
+	 *             if the file ends early
+	 */
+	private int readVarint() throws IOException {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (!buffer.hasRemaining()) {
+				refill();
+			}
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/**
+	 * Reads a UTF-8 string from the file.
+	 *
+	 * @param length
+	 *            - length in bytes
+	 * @return string
+	 * @throws IOException
+	 *             if the file ends early
+	 */
+	private String readString(int length) throws IOException {
+		byte[] bytes = new byte[length];
+		readBytes(bytes, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads raw bytes from the file.
+	 *
+	 * @param bytes
+	 *            - array to fill
+	 * @param length
+	 *            - number of bytes to read
+	 * @throws IOException
+	 *             if the file ends early
+	 */
+	private void readBytes(byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			if (!buffer.hasRemaining()) {
+				refill();
+			}
+			int chunk = Math.min(length - offset, buffer.remaining());
+			buffer.get(bytes, offset, chunk);
+			offset += chunk;
+		}
+	}
+
+	/**
+	 * Reads the next block of the file into the buffer.
+	 *
+	 * @throws IOException
+	 *             if the file ends early
+	 */
+	private void refill() throws IOException {
+		buffer.clear();
+		if (channel.read(buffer) <= 0) {
+			throw new EOFException("Index file ended early");
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Reads part of the file into the buffer.
+	 *
+	 * @param offset
+	 *            - position in the file
+	 * @param length
+	 *            - number of bytes to read
+	 * @throws IOException
+	 *             if the file is shorter
+	 */
+	private void fill(long offset, int length) throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) <= 0) {
+				throw new EOFException("Index file ended early");
+			}
+		}
+		buffer.flip();
+	}
+}
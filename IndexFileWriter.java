@@ -0,0 +1,284 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes an inverted index to a compact binary file that can be loaded again
+ * without re-parsing the original text files. Terms must be written in sorted
+ * order, one at a time, so an index can be streamed to disk without holding
+ * all of it in memory.
+ *
+ * The file starts with a fixed size header, followed by the terms, a table
+ * with the offset of every term (so a term can be found by binary search
+ * without reading the others), and finally the document table:
+ *
+ * <pre>
+ * header:    int magic, int version, int documents, int terms,
+ *            long term table offset, long document table offset
+ * term:      varint length, UTF-8 bytes, varint documents,
+ *            varint length of postings, postings
+ * posting:   varint document id delta, varint count, varint first position,
+ *            varint length of the rest, varint deltas of the other positions
+ * term table: long offset of each term
+ * documents: varint length, UTF-8 path, varint number of words
+ * </pre>
+ *
+ * Version 1 files have no number of words after each path.
+ *
+ * All varints are unsigned 7-bit groups, lowest group first.
+ */
+public class IndexFileWriter implements Closeable {
+
+	/** Marks the start of every index file ("IIDX"). */
+	public static final int MAGIC = 0x49494458;
+
+	/** Version of the format written by this class. */
+	public static final int VERSION = 2;
+
+	/** Size in bytes of the header at the start of the file. */
+	public static final int HEADER_SIZE = 32;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long position;
+	private int documents;
+	private int terms;
+	private long[] termOffsets;
+	private String lastTerm;
+	private byte[] postings;
+	private int postingsLength;
+
+	/**
+	 * Creates or replaces an index file and reserves room for its header.
+	 *
+	 * @param path
+	 *            - file to write to
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public IndexFileWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocate(1 << 16);
+		position = HEADER_SIZE;
+		channel.position(HEADER_SIZE);
+		documents = -1;
+		terms = 0;
+		termOffsets = new long[1024];
+		lastTerm = null;
+		postings = new byte[1024];
+	}
+
+	/**
+	 * Writes a term and its postings. Terms must be written in ascending
+	 * order and each term only once.
+	 *
+	 * @param term
+	 *            - word in the index
+	 * @param list
+	 *            - postings of the word
+	 * @throws IOException
+	 *             if the term cannot be written
+	 */
+	public void writeTerm(String term, PostingList list) throws IOException {
+		if (lastTerm != null && lastTerm.compareTo(term) >= 0) {
+			throw new IllegalArgumentException("Terms must be written in order: " + term);
+		}
+		lastTerm = term;
+
+		if (terms == termOffsets.length) {
+			termOffsets = Arrays.copyOf(termOffsets, terms * 2);
+		}
+		termOffsets[terms++] = position;
+
+		encode(list);
+		byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+		writeVarint(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+		writeVarint(list.size());
+		writeVarint(postingsLength);
+		writeBytes(postings, 0, postingsLength);
+	}
+
+	/**
+	 * Writes the document table. Must be called once, after the last term.
+	 *
+	 * @param table
+	 *            - table the written postings' document ids refer to
+	 * @throws IOException
+	 *             if the table cannot be written
+	 */
+	public void writeDocuments(DocumentTable table) throws IOException {
+		documents = table.size();
+		long termTable = position;
+		for (int i = 0; i < terms; i++) {
+			writeLong(termOffsets[i]);
+		}
+
+		long documentTable = position;
+		for (int i = 0; i < documents; i++) {
+			byte[] bytes = table.getPath(i).getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			writeBytes(bytes, 0, bytes.length);
+			writeVarint(table.getLength(i));
+		}
+		flush();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(documents).putInt(terms);
+		header.putLong(termTable).putLong(documentTable);
+		header.flip();
+		channel.write(header, 0);
+	}
+
+	/**
+	 * Returns the number of terms written so far.
+	 *
+	 * @return number of terms
+	 */
+	public int getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Finishes the file. Fails if {@link #writeDocuments(DocumentTable)} was
+	 * never called, since the header would be missing.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be finished
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (documents < 0) {
+				throw new IOException("Index file closed without a document table");
+			}
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Encodes the postings of a term into {@link #postings}. Posting lists
+	 * are kept in memory in the same layout, so they are copied as they are.
+	 *
+	 * @param list
+	 *            - postings to encode
+	 */
+	private void encode(PostingList list) {
+		postingsLength = 0;
+		ensurePostings(list.encodedLength());
+		list.copyEncoded(postings, 0);
+		postingsLength = list.encodedLength();
+	}
+
+	/**
+	 * Makes sure {@link #postings} has room for more bytes.
+	 *
+	 * @param bytes
+	 *            - number of bytes about to be added
+	 */
+	private void ensurePostings(int bytes) {
+		if (postingsLength + bytes > postings.length) {
+			postings = Arrays.copyOf(postings, Math.max(postingsLength + bytes, postings.length * 2));
+		}
+	}
+
+	/**
+	 * Returns the number of bytes a value takes as a varint.
+	 *
+	 * @param value
+	 *            - value, treated as unsigned
+	 * @return size in bytes, between 1 and 5
+	 */
+	public static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a varint to the file.
+	 *
+	 * @param value
+	 *            - value, treated as unsigned
+	 * @throws IOException
+	 *             if the buffer cannot be flushed
+	 */
+	private void writeVarint(int value) throws IOException {
+		if (buffer.remaining() < 5) {
+			flush();
+		}
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+			position++;
+		}
+		buffer.put((byte) value);
+		position++;
+	}
+
+	/**
+	 * Writes a long to the file.
+	 *
+	 * @param value
+	 *            - value to write
+	 * @throws IOException
+	 *             if the buffer cannot be flushed
+	 */
+	private void writeLong(long value) throws IOException {
+		if (buffer.remaining() < 8) {
+			flush();
+		}
+		buffer.putLong(value);
+		position += 8;
+	}
+
+	/**
+	 * Writes raw bytes to the file.
+	 *
+	 * @param bytes
+	 *            - array holding the bytes
+	 * @param offset
+	 *            - index of the first byte
+	 * @param length
+	 *            - number of bytes
+	 * @throws IOException
+	 *             if the buffer cannot be flushed
+	 */
+	private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(bytes, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+			position += chunk;
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the file.
+	 *
+	 * @throws IOException
+	 *             if the bytes cannot be written
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
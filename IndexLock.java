@@ -0,0 +1,121 @@
+/**
+ * A read/write lock used to protect an {@link InvertedIndex} or a result map.
+ * Any number of readers may hold the lock at once, but a writer holds it
+ * alone. Implementations differ in who goes first when both are waiting, and
+ * some also support optimistic reads that take no lock at all.
+ * 
+ * A thread interrupted while waiting in {@link #lockRead()} or
+ * {@link #lockWrite()} keeps waiting for the lock, but its interrupt status is
+ * restored once the lock is acquired. Callers that can give up instead use
+ * {@link #lockReadInterruptibly()} and {@link #lockWriteInterruptibly()}.
+ */
+public interface IndexLock {
+
+	/** Name of the original monitor based lock, see {@link MultiReaderLock}. */
+	public static final String SIMPLE = "simple";
+
+	/** Name of the lock that prefers writers, see {@link WriterPreferringLock}. */
+	public static final String WRITER = "writer";
+
+	/** Name of the lock with optimistic reads, see {@link StampedIndexLock}. */
+	public static final String OPTIMISTIC = "optimistic";
+
+	/** Name of the lock alternating read and write phases, see {@link PhaseFairLock}. */
+	public static final String FAIR = "fair";
+
+	/**
+	 * Waits until no writer holds the lock, then acquires it for reading.
+	 */
+	public void lockRead();
+
+	/**
+	 * Waits until no writer holds the lock, then acquires it for reading,
+	 * unless the thread is interrupted first.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread was interrupted before or while waiting, in
+	 *             which case the lock is not acquired
+	 */
+	public void lockReadInterruptibly() throws InterruptedException;
+
+	/**
+	 * Releases a read lock.
+	 */
+	public void unlockRead();
+
+	/**
+	 * Waits until no reader or writer holds the lock, then acquires it for
+	 * writing.
+	 */
+	public void lockWrite();
+
+	/**
+	 * Waits until no reader or writer holds the lock, then acquires it for
+	 * writing, unless the thread is interrupted first.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread was interrupted before or while waiting, in
+	 *             which case the lock is not acquired
+	 */
+	public void lockWriteInterruptibly() throws InterruptedException;
+
+	/**
+	 * Releases a write lock.
+	 */
+	public void unlockWrite();
+
+	/**
+	 * Starts an optimistic read, which takes no lock. The read must be checked
+	 * with {@link #validate(long)} afterwards, and repeated under
+	 * {@link #lockRead()} if a write happened in the meantime.
+	 * 
+	 * @return stamp to validate, or 0 if optimistic reads are not supported or
+	 *         the lock is currently held for writing
+	 */
+	public default long tryOptimisticRead() {
+		return 0;
+	}
+
+	/**
+	 * Checks that no write happened since an optimistic read started.
+	 * 
+	 * @param stamp
+	 *            - stamp returned by {@link #tryOptimisticRead()}
+	 * @return true if the data read since then is consistent
+	 */
+	public default boolean validate(long stamp) {
+		return false;
+	}
+
+	/**
+	 * Returns the acquire and wait counters of this lock.
+	 * 
+	 * @return counters
+	 */
+	public LockCounters getCounters();
+
+	/**
+	 * Creates a lock by name.
+	 * 
+	 * @param mode
+	 *            - one of {@link #SIMPLE}, {@link #WRITER},
+	 *            {@link #OPTIMISTIC} or {@link #FAIR}
+	 * @return new lock
+	 * @throws IllegalArgumentException
+	 *             if the mode is not known
+	 */
+	public static IndexLock create(String mode) {
+		switch (mode) {
+		case SIMPLE:
+			return new MultiReaderLock();
+		case WRITER:
+			return new WriterPreferringLock();
+		case OPTIMISTIC:
+			return new StampedIndexLock();
+		case FAIR:
+			return new PhaseFairLock();
+		default:
+			throw new IllegalArgumentException("Unknown lock mode: " + mode);
+		}
+	}
+}
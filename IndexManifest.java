@@ -0,0 +1,224 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Remembers the size, last modified time and content hash of every file in a
+ * saved index, so a later run can tell which files changed without parsing
+ * them again. The manifest is a small text file kept next to the index file,
+ * with one line per file:
+ *
+ * <pre>
+ * size TAB modified millis TAB SHA-256 hex TAB path
+ * </pre>
+ */
+public class IndexManifest {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * What is known about one indexed file.
+	 */
+	public static class Entry {
+
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		/**
+		 * Creates an entry for a file.
+		 *
+		 * @param size
+		 *            - size of the file in bytes
+		 * @param modified
+		 *            - last modified time in milliseconds
+		 * @param hash
+		 *            - hex SHA-256 of the file's contents
+		 */
+		public Entry(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns the size of the file.
+		 *
+		 * @return size in bytes
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the last modified time of the file.
+		 *
+		 * @return time in milliseconds
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * Returns the hash of the file's contents.
+		 *
+		 * @return hex SHA-256
+		 */
+		public String getHash() {
+			return hash;
+		}
+	}
+
+	private final TreeMap<String, Entry> entries;
+
+	/**
+	 * Creates an empty manifest.
+	 */
+	public IndexManifest() {
+		entries = new TreeMap<String, Entry>();
+	}
+
+	/**
+	 * Returns where the manifest of an index file is kept.
+	 *
+	 * @param index
+	 *            - index file
+	 * @return manifest file next to the index file
+	 */
+	public static Path pathFor(Path index) {
+		return index.resolveSibling(index.getFileName() + ".manifest");
+	}
+
+	/**
+	 * Returns the entry of a file.
+	 *
+	 * @param path
+	 *            - path of the file, as stored in the index
+	 * @return entry, or null if the file is not in the manifest
+	 */
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	/**
+	 * Adds or replaces the entry of a file.
+	 *
+	 * @param path
+	 *            - path of the file, as stored in the index
+	 * @param entry
+	 *            - size, modified time and hash of the file
+	 */
+	public void put(String path, Entry entry) {
+		entries.put(path, entry);
+	}
+
+	/**
+	 * Removes the entry of a file.
+	 *
+	 * @param path
+	 *            - path of the file, as stored in the index
+	 */
+	public void remove(String path) {
+		entries.remove(path);
+	}
+
+	/**
+	 * Returns the paths of every file in the manifest.
+	 *
+	 * @return paths in sorted order
+	 */
+	public Set<String> paths() {
+		return entries.keySet();
+	}
+
+	/**
+	 * Reads a manifest written by {@link #write(Path)}.
+	 *
+	 * @param path
+	 *            - manifest file
+	 * @return manifest
+	 * @throws IOException
+	 *             if the file cannot be read or a line is malformed
+	 */
+	public static IndexManifest read(Path path) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+		try (BufferedReader reader = Files.newBufferedReader(path, Charset.forName("UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 4);
+				if (fields.length != 4) {
+					throw new IOException("Malformed manifest line: " + line);
+				}
+				try {
+					manifest.put(fields[3], new Entry(Long.parseLong(fields[0]),
+							Long.parseLong(fields[1]), fields[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed manifest line: " + line, e);
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest to a file.
+	 *
+	 * @param path
+	 *            - manifest file to create or replace
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path,
+				Charset.forName("UTF-8")))) {
+			for (String file : entries.keySet()) {
+				Entry entry = entries.get(file);
+				writer.print(entry.size + "\t" + entry.modified + "\t" + entry.hash + "\t" + file + "\n");
+			}
+			if (writer.checkError()) {
+				throw new IOException("Unable to write manifest " + path);
+			}
+		}
+	}
+
+	/**
+	 * Computes the content hash stored for a file.
+	 *
+	 * @param file
+	 *            - file to hash
+	 * @return hex SHA-256 of the file's contents
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,501 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Builds an index in stages connected by bounded queues:
+ *
+ * <pre>
+ * traverse -&gt; read -&gt; tokenize -&gt; index -&gt; merge
+ * </pre>
+ *
+ * One thread walks the directory tree, reader threads load and decode files,
+ * tokenizer threads turn each file into a small index of its own, and indexer
+ * threads add those to per-thread shards, which are merged into the master
+ * index at the end. When a stage falls behind, the queue in front of it fills
+ * up and the stages before it block, so no more than a fixed number of paths,
+ * file contents and file indexes are ever waiting, no matter how large the
+ * corpus is.
+ *
+ * Only files smaller than {@link #WHOLE_FILE_BYTES} are read whole by the
+ * reader threads. Larger files are passed on unread and streamed by a
+ * tokenizer thread a few chars at a time, memory-mapped above the
+ * {@link IndexBuilder#getMappedThreshold()} like any other build, so the file
+ * contents waiting in the queues stay bounded in bytes as well as in number.
+ *
+ * Each stage counts the work it does, see {@link #toString()}. If every
+ * thread of a stage fails, the stages before it are interrupted so they stop
+ * instead of waiting forever for room in a queue nobody reads, and the build
+ * gives up without merging.
+ */
+public class IndexPipeline {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/** Marks the end of the queue of tokenized files. */
+	private static final InvertedIndex DONE = new InvertedIndex();
+
+	/** Default number of items each queue can hold. */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/** Files of at least this many bytes are streamed instead of read whole. */
+	public static final long WHOLE_FILE_BYTES = 64 << 10;
+
+	private final int readers;
+	private final int tokenizers;
+	private final int indexers;
+	private final int capacity;
+	private final ArrayList<Stage> stages;
+	private int mergers;
+
+	/**
+	 * Creates a pipeline with the given number of threads per stage.
+	 *
+	 * @param readers
+	 *            - threads that read files
+	 * @param tokenizers
+	 *            - threads that tokenize file contents
+	 * @param indexers
+	 *            - threads that add tokenized files to the shards
+	 * @param capacity
+	 *            - number of items each queue can hold
+	 */
+	public IndexPipeline(int readers, int tokenizers, int indexers, int capacity) {
+		this.readers = Math.max(1, readers);
+		this.tokenizers = Math.max(1, tokenizers);
+		this.indexers = Math.max(1, indexers);
+		this.capacity = Math.max(1, capacity);
+		this.stages = new ArrayList<Stage>();
+		this.mergers = 1;
+	}
+
+	/**
+	 * Sets how many threads merge the shards at the end of a build, each
+	 * merging its own range of words.
+	 *
+	 * @param threads
+	 *            - number of merge threads
+	 */
+	public void setMergeThreads(int threads) {
+		mergers = Math.max(1, threads);
+	}
+
+	/**
+	 * Adds every .txt file in a directory and its sub-directories to an index.
+	 *
+	 * @param directory
+	 *            - directory to traverse
+	 * @param index
+	 *            - index to add the words to
+	 * @return false if a stage failed, in which case no words were added
+	 */
+	public boolean build(Path directory, InvertedIndex index) {
+		stages.clear();
+		BlockingQueue<Document> paths = new ArrayBlockingQueue<Document>(capacity);
+		BlockingQueue<Document> contents = new ArrayBlockingQueue<Document>(capacity);
+		BlockingQueue<InvertedIndex> tokenized = new ArrayBlockingQueue<InvertedIndex>(capacity);
+		ArrayList<InvertedIndex> shards = new ArrayList<InvertedIndex>();
+		DocumentTable documents = index.getDocuments();
+
+		Stage traverse = new Stage("traverse", "files", 1, readers, paths, Document.DONE) {
+			@Override
+			protected void work() throws InterruptedException {
+				traverse(directory, documents, paths, this);
+			}
+		};
+
+		Stage read = new Stage("read", "bytes", readers, tokenizers, contents, Document.DONE) {
+			@Override
+			protected void work() throws InterruptedException {
+				Document document;
+				while ((document = paths.take()) != Document.DONE) {
+					long start = System.nanoTime();
+					try {
+						document.read();
+						count(document.bytes, System.nanoTime() - start);
+						contents.put(document);
+					} catch (IOException e) {
+						System.out.println("Issue reading file");
+					}
+				}
+			}
+		};
+
+		Stage tokenize = new Stage("tokenize", "words", tokenizers, indexers, tokenized, DONE) {
+			@Override
+			protected void work() throws InterruptedException {
+				Document document;
+				while ((document = contents.take()) != Document.DONE) {
+					long start = System.nanoTime();
+					InvertedIndex fileindex = new InvertedIndex(documents);
+					int id = document.id;
+					WordTokenizer tokenizer = new WordTokenizer(
+							(word, position) -> fileindex.append(word, id, position));
+					if (document.text != null) {
+						tokenizer.feed(document.text, 0, document.text.length);
+					} else {
+						try {
+							IndexBuilder.tokenize(document.path, tokenizer);
+						} catch (IOException e) {
+							System.out.println("Issue reading file");
+							continue;
+						}
+					}
+					tokenizer.finish();
+					fileindex.appended();
+					documents.setLength(id, tokenizer.count());
+					document.text = null;
+					count(tokenizer.count(), System.nanoTime() - start);
+					tokenized.put(fileindex);
+				}
+			}
+		};
+
+		Stage add = new Stage("index", "files", indexers, 0, null, null) {
+			@Override
+			protected void work() throws InterruptedException {
+				InvertedIndex shard = new InvertedIndex(documents);
+				synchronized (shards) {
+					shards.add(shard);
+				}
+				InvertedIndex fileindex;
+				while ((fileindex = tokenized.take()) != DONE) {
+					long start = System.nanoTime();
+					shard.addAll(fileindex);
+					count(1, System.nanoTime() - start);
+				}
+			}
+		};
+
+		read.setProducer(traverse);
+		tokenize.setProducer(read);
+		add.setProducer(tokenize);
+		stages.add(traverse);
+		stages.add(read);
+		stages.add(tokenize);
+		stages.add(add);
+		for (Stage stage : stages) {
+			stage.start();
+		}
+		for (Stage stage : stages) {
+			stage.join();
+		}
+		for (Stage stage : stages) {
+			if (stage.failed()) {
+				logger.warn("Pipeline stopped: {}", this);
+				return false;
+			}
+		}
+
+		Stage merge = new Stage("merge", "shards", 1, 0, null, null) {
+			@Override
+			protected void work() {
+				long start = System.nanoTime();
+				index.addAll(shards, mergers);
+				count(shards.size(), System.nanoTime() - start);
+			}
+		};
+		stages.add(merge);
+		merge.start();
+		merge.join();
+		logger.debug("Pipeline finished: {}", this);
+		return !merge.failed();
+	}
+
+	/**
+	 * Walks a directory tree, giving every .txt file a document id and adding
+	 * it to the queue of files to read. Blocks while the queue is full.
+	 *
+	 * @param directory
+	 *            - directory to walk
+	 * @param documents
+	 *            - document table to add the files to
+	 * @param paths
+	 *            - queue of files to read
+	 * @param stage
+	 *            - stage to count the files in
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for room in the queue
+	 */
+	private static void traverse(Path directory, DocumentTable documents,
+			BlockingQueue<Document> paths, Stage stage) throws InterruptedException {
+		long start = System.nanoTime();
+		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for (Path file : listing) {
+				if (Files.isDirectory(file)) {
+					traverse(file, documents, paths, stage);
+					start = System.nanoTime();
+				} else if (file.toString().toLowerCase().endsWith(".txt")) {
+					Path path = file.toAbsolutePath().normalize();
+					stage.count(1, System.nanoTime() - start);
+					paths.put(new Document(documents.add(path.toString()), path));
+					start = System.nanoTime();
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to traverse " + directory);
+		}
+	}
+
+	/**
+	 * Returns the items, busy time and throughput of every stage of the last
+	 * build, one line per stage.
+	 *
+	 * @return per-stage statistics
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Pipeline stages:");
+		for (Stage stage : stages) {
+			builder.append(System.lineSeparator()).append("  ").append(stage);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * A file on its way through the pipeline.
+	 */
+	private static class Document {
+
+		/** Marks the end of a queue of documents. */
+		public static final Document DONE = new Document(-1, null);
+
+		private final int id;
+		private final Path path;
+		private char[] text;
+
+		/** Bytes read by {@link #read()}, 0 if the file is streamed. */
+		private long bytes;
+
+		/**
+		 * Creates a document that has not been read yet.
+		 *
+		 * @param id
+		 *            - document id
+		 * @param path
+		 *            - file to read
+		 */
+		public Document(int id, Path path) {
+			this.id = id;
+			this.path = path;
+		}
+
+		/**
+		 * Reads and decodes the whole file, unless it is large enough to be
+		 * streamed by the tokenizer instead, see {@link #WHOLE_FILE_BYTES}.
+		 *
+		 * @throws IOException
+		 *             if the file cannot be read or is not valid UTF-8
+		 */
+		public void read() throws IOException {
+			if (Files.size(path) >= Math.min(WHOLE_FILE_BYTES, IndexBuilder.getMappedThreshold())) {
+				return;
+			}
+			byte[] raw = Files.readAllBytes(path);
+			CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(raw));
+			bytes = raw.length;
+			text = new char[chars.remaining()];
+			chars.get(text);
+		}
+	}
+
+	/**
+	 * A group of threads running the same step. Once all of them are done,
+	 * the last one puts one end marker per consumer thread on the output
+	 * queue, so every thread of the next stage stops. If any of them failed,
+	 * the last one also interrupts the stage producing its input, which then
+	 * fails in turn, so no stage is left blocked on a full queue.
+	 */
+	static abstract class Stage {
+
+		private final String name;
+		private final String unit;
+		private final Thread[] threads;
+		private final int consumers;
+		private final BlockingQueue<?> output;
+		private final Object end;
+		private final AtomicInteger running;
+		private final AtomicLong items;
+		private final AtomicLong busy;
+		private final AtomicBoolean failed;
+		private Stage producer;
+		private long started;
+		private long elapsed;
+
+		/**
+		 * Creates a stage.
+		 *
+		 * @param name
+		 *            - name of the stage
+		 * @param unit
+		 *            - what the stage counts
+		 * @param threads
+		 *            - number of threads
+		 * @param consumers
+		 *            - number of threads reading the output queue
+		 * @param output
+		 *            - queue the stage writes to, or null
+		 * @param end
+		 *            - end marker for the output queue
+		 */
+		public Stage(String name, String unit, int threads, int consumers,
+				BlockingQueue<?> output, Object end) {
+			this.name = name;
+			this.unit = unit;
+			this.threads = new Thread[threads];
+			this.consumers = consumers;
+			this.output = output;
+			this.end = end;
+			this.running = new AtomicInteger(threads);
+			this.items = new AtomicLong();
+			this.busy = new AtomicLong();
+			this.failed = new AtomicBoolean();
+		}
+
+		/**
+		 * Sets the stage whose output this stage reads, which is interrupted
+		 * if this stage fails. Must be called before the stages start.
+		 *
+		 * @param producer
+		 *            - stage writing this stage's input queue
+		 */
+		public void setProducer(Stage producer) {
+			this.producer = producer;
+		}
+
+		/**
+		 * Tests if a thread of this stage stopped on an exception or
+		 * interrupt instead of finishing its work.
+		 *
+		 * @return true if the stage failed
+		 */
+		public boolean failed() {
+			return failed.get();
+		}
+
+		/**
+		 * Does the work of one thread of this stage.
+		 *
+		 * @throws InterruptedException
+		 *             if interrupted while waiting on a queue
+		 */
+		protected abstract void work() throws InterruptedException;
+
+		/**
+		 * Records work done by a thread.
+		 *
+		 * @param count
+		 *            - number of units processed
+		 * @param nanos
+		 *            - time spent processing them
+		 */
+		protected void count(long count, long nanos) {
+			items.addAndGet(count);
+			busy.addAndGet(nanos);
+		}
+
+		/**
+		 * Starts the threads of this stage.
+		 */
+		public void start() {
+			started = System.nanoTime();
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(this::run, name + "-" + i);
+				threads[i].start();
+			}
+		}
+
+		/**
+		 * Interrupts every thread of this stage.
+		 */
+		public void interrupt() {
+			for (Thread thread : threads) {
+				if (thread != null) {
+					thread.interrupt();
+				}
+			}
+		}
+
+		/**
+		 * Waits for every thread of this stage to finish.
+		 */
+		public void join() {
+			boolean interrupted = false;
+			for (Thread thread : threads) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Runs the work of one thread, then ends the output queue if this was
+		 * the last thread of the stage, first interrupting the producer if
+		 * the stage failed.
+		 */
+		@SuppressWarnings("unchecked")
+		private void run() {
+			try {
+				work();
+			} catch (InterruptedException e) {
+				logger.warn("Pipeline stage {} interrupted", name);
+				failed.set(true);
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				logger.warn("Pipeline stage {} failed", name, e);
+				failed.set(true);
+			} finally {
+				if (running.decrementAndGet() == 0) {
+					elapsed = System.nanoTime() - started;
+					if (failed.get() && producer != null) {
+						producer.interrupt();
+					}
+					if (output != null) {
+						for (int i = 0; i < consumers; i++) {
+							try {
+								((BlockingQueue<Object>) output).put(end);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the items processed, busy time across all threads and the
+		 * throughput over the time the stage was running.
+		 *
+		 * @return statistics of the stage
+		 */
+		@Override
+		public String toString() {
+			double seconds = elapsed / 1e9;
+			return String.format("%-8s %d thread(s): %d %s in %.3f s (%.0f %s/s), busy %.3f s%s",
+					name, threads.length, items.get(), unit, seconds,
+					seconds > 0 ? items.get() / seconds : 0, unit, busy.get() / 1e9,
+					failed.get() ? ", failed" : "");
+		}
+	}
+}
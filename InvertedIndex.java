@@ -5,10 +5,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,15 +25,181 @@ import org.apache.logging.log4j.Logger;
  * This class is a custom data structure indexing the location of each word in each file parsed
  * 
  */
-public class InvertedIndex {
+public class InvertedIndex implements SearchableIndex {
 
+	private static final Logger logger = LogManager.getLogger();
+
+	/** Approximate heap used by a word's map entries and String, besides its chars. */
+	private static final int WORD_BYTES = 136;
 	
-	private final TreeMap<String, TreeMap<String, ArrayList<Integer>>> wordIndex;
-	private final MultiReaderLock lock;
+	private final TreeMap<String, PostingList> wordIndex;
+
+	/**
+	 * The words of {@link #wordIndex} hashed for exact lookups, updated by
+	 * every write. Concurrent so an optimistic exact search can look a word
+	 * up while a writer changes the map.
+	 */
+	private final ConcurrentHashMap<String, PostingList> exactWords;
+	private final DocumentTable documents;
+	private final IndexLock lock;
+	private int prefixLength;
+	private volatile PrefixIndex prefixes;
+	private int prefixCacheSize = PrefixCache.DEFAULT_CAPACITY;
+	private volatile PrefixCache prefixCache;
+
+	/** Counts the changes to the words, see {@link #generation()}. */
+	private volatile long generation;
 	
 	public InvertedIndex() {
+		this(new DocumentTable());
+	}
+
+	/**
+	 * Creates an empty index that shares a document table with other
+	 * indexes, so postings can be merged between them without translating
+	 * document ids.
+	 * 
+	 * @param documents
+	 *            - table mapping document paths to ids
+	 */
+	public InvertedIndex(DocumentTable documents) {
+		this(documents, new MultiReaderLock());
+	}
+
+	/**
+	 * Creates an empty index protected by the given lock.
+	 * 
+	 * @param documents
+	 *            - table mapping document paths to ids
+	 * @param lock
+	 *            - lock guarding reads and writes of this index
+	 */
+	public InvertedIndex(DocumentTable documents, IndexLock lock) {
 		wordIndex = new TreeMap<>();
-		this.lock = new MultiReaderLock();
+		exactWords = new ConcurrentHashMap<>();
+		this.documents = documents;
+		this.lock = lock;
+	}
+
+	/**
+	 * Returns the lock guarding this index, for example to report its
+	 * contention counters.
+	 * 
+	 * @return lock of this index
+	 */
+	public IndexLock getLock() {
+		return lock;
+	}
+
+	/**
+	 * Returns the table used to map document paths to ids.
+	 * 
+	 * @return document table
+	 */
+	public DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Estimates the heap used by the words and postings of this index, for
+	 * example to decide when a build should spill to disk. Each word is
+	 * counted with the overhead of its map entries and String.
+	 * 
+	 * @return approximate size in bytes
+	 */
+	public long estimateBytes() {
+		lock.lockRead();
+		try {
+			long bytes = 0;
+			for (Map.Entry<String, PostingList> entry : wordIndex.entrySet()) {
+				bytes += WORD_BYTES + entry.getKey().length() + entry.getValue().estimateBytes();
+			}
+			return bytes;
+		} finally {
+			lock.unlockRead();
+		}
+	}
+
+	/**
+	 * Returns the generation of the index, which grows every time words are
+	 * added or removed. A search that starts after reading a generation sees
+	 * every change made before it.
+	 * 
+	 * @return current generation
+	 */
+	@Override
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Sets the length of the prefixes whose search results are precomputed,
+	 * see {@link PrefixIndex}. Query words up to this length are answered
+	 * from the precomputed results, built on the first search after the index
+	 * last changed.
+	 * 
+	 * @param length
+	 *            - longest prefix to precompute, or 0 to turn it off
+	 */
+	public void setPrefixLength(int length) {
+		lock.lockWrite();
+		prefixes = null;
+		prefixLength = Math.max(0, length);
+		lock.unlockWrite();
+	}
+
+	/**
+	 * Sets how many prefixes the prefix cache holds, see {@link PrefixCache}.
+	 * Partial searches aggregate the postings of a query word matching many
+	 * words the first time it is searched after the index last changed, and
+	 * reuse the aggregate while it stays cached.
+	 * 
+	 * @param prefixes
+	 *            - largest number of prefixes cached, or 0 to turn it off
+	 */
+	public void setPrefixCacheSize(int prefixes) {
+		lock.lockWrite();
+		prefixCache = null;
+		prefixCacheSize = Math.max(0, prefixes);
+		lock.unlockWrite();
+	}
+
+	/**
+	 * Returns the prefix cache filled since the index last changed.
+	 * 
+	 * @return prefix cache, or null if none is in use
+	 */
+	public PrefixCache getPrefixCache() {
+		return prefixCache;
+	}
+
+	/**
+	 * Drops the lookup structures built from the words, so they are rebuilt
+	 * on the next search, and starts a new generation. Must be called while
+	 * holding the write lock, before the words change.
+	 */
+	private void changed() {
+		generation++;
+		if (prefixes != null) {
+			prefixes = null;
+		}
+		if (prefixCache != null) {
+			prefixCache = null;
+		}
+	}
+
+	/**
+	 * Adds a new word to both maps of the words. Must be called while holding
+	 * the write lock.
+	 * 
+	 * @param word
+	 *            - word not in the index yet
+	 * @param postings
+	 *            - postings of the word
+	 */
+	private void putWord(String word, PostingList postings) {
+		wordIndex.put(word, postings);
+		exactWords.put(word, postings);
 	}
 
 	/**
@@ -40,48 +214,453 @@ public class InvertedIndex {
 	 * @param int l - Position of word in word list/in the file
 	 */
 	public void add(String word, String path, int locationinfile) {
+		add(word, documents.add(path), locationinfile);
+	}
+
+	/**
+	 * Stores a word, the id of the document where that word was found, and
+	 * the position in that document the word was found.
+	 * 
+	 * @param word
+	 *            - Current word in the file/word list.
+	 * @param document
+	 *            - id of the document in this index's {@link DocumentTable}
+	 * @param locationinfile
+	 *            - Position of word in word list/in the file
+	 */
+	public void add(String word, int document, int locationinfile) {
+		addEstimated(word, document, locationinfile);
+	}
+
+	/**
+	 * Stores a word like {@link #add(String, int, int)}, and returns about
+	 * how much that grew the index by the model of {@link #estimateBytes()}:
+	 * a word new to the index costs its map entries, its chars and an empty
+	 * posting list, a document new to the word costs the header of its
+	 * block, and every position costs the bytes encoding it.
+	 * 
+	 * @param word
+	 *            - Current word in the file/word list.
+	 * @param document
+	 *            - id of the document in this index's {@link DocumentTable}
+	 * @param locationinfile
+	 *            - Position of word in word list/in the file
+	 * @return approximate number of bytes added
+	 */
+	public long addEstimated(String word, int document, int locationinfile) {
 		lock.lockWrite();
-		if (!wordIndex.containsKey(word)) {
-			wordIndex.put(word, new TreeMap<String, ArrayList<Integer>>());
+		try {
+			changed();
+			long bytes = 0;
+			PostingList postings = exactWords.get(word);
+			if (postings == null) {
+				postings = new PostingList();
+				putWord(word, postings);
+				bytes += WORD_BYTES + word.length() + postings.estimateBytes();
+			}
+
+			int encoded = postings.encodedLength();
+			postings.add(document, locationinfile);
+			return bytes + postings.encodedLength() - encoded;
+		} finally {
+			lock.unlockWrite();
 		}
+	}
 
-		if (!wordIndex.get(word).containsKey(path)) {
-			wordIndex.get(word).put(path, new ArrayList<Integer>());
+	/**
+	 * Stores a word like {@link #add(String, int, int)}, but without taking
+	 * the lock or starting a new generation. Only for an index that a single
+	 * builder thread owns until it is done adding, which then calls
+	 * {@link #appended()} once before handing the index on.
+	 * 
+	 * @param word
+	 *            - Current word in the file/word list.
+	 * @param document
+	 *            - id of the document in this index's {@link DocumentTable}
+	 * @param locationinfile
+	 *            - Position of word in word list/in the file
+	 */
+	void append(String word, int document, int locationinfile) {
+		PostingList postings = exactWords.get(word);
+		if (postings == null) {
+			postings = new PostingList();
+			putWord(word, postings);
 		}
+		postings.add(document, locationinfile);
+	}
 
-		wordIndex.get(word).get(path).add(locationinfile);
+	/**
+	 * Starts a new generation after words were added with
+	 * {@link #append(String, int, int)}.
+	 */
+	void appended() {
+		lock.lockWrite();
+		changed();
 		lock.unlockWrite();
 	}
 	
 
 	public void addAll(InvertedIndex other) {
 		lock.lockWrite();
+		changed();
+
+		int[] documentMap = documentMap(other);
 
 		for (String word : other.wordIndex.keySet()) {
-			
-			if (this.wordIndex.containsKey(word) == false) {
+			PostingList otherpostings = other.wordIndex.get(word);
+			PostingList postings = exactWords.get(word);
+			if (postings == null) {
+				postings = new PostingList(otherpostings.size(), otherpostings.positions());
+				putWord(word, postings);
+			}
+			postings.addAll(otherpostings, documentMap);
+		}
+		lock.unlockWrite();
+	}
+
+	/**
+	 * Adds every word of several indexes at once, using a single k-way merge
+	 * over their sorted words instead of one {@link #addAll(InvertedIndex)}
+	 * per index. Intended for combining the per-thread shards of a
+	 * multithreaded build, which should not be modified during the merge.
+	 * 
+	 * @param others
+	 *            - indexes to add to this one
+	 */
+	public void addAll(Collection<InvertedIndex> others) {
+		ArrayList<MergeCursor> cursors = new ArrayList<MergeCursor>(others.size());
+		for (InvertedIndex other : others) {
+			cursors.add(new MergeCursor(other.wordIndex, documentMap(other), cursors.size()));
+		}
 
-				this.wordIndex.put(word, other.wordIndex.get(word));
+		lock.lockWrite();
+		changed();
+		try {
+			merge(cursors, wordIndex, exactWords);
+		} finally {
+			lock.unlockWrite();
+		}
+	}
+
+	/**
+	 * Adds every word of several indexes at once, like
+	 * {@link #addAll(Collection)}, but splits the words into ranges and merges
+	 * each range on its own thread. The ranges are chosen from a sample of the
+	 * indexes' words so each holds about the same number of positions. Words
+	 * never span two ranges, so the result is the same as a single merge.
+	 * 
+	 * @param others
+	 *            - indexes to add to this one
+	 * @param threads
+	 *            - number of ranges to merge at once
+	 */
+	public void addAll(Collection<InvertedIndex> others, int threads) {
+		String[] bounds = threads > 1 ? splitPoints(others, threads) : new String[0];
+		if (bounds.length == 0) {
+			addAll(others);
+			return;
+		}
+
+		int[][] documentMaps = new int[others.size()][];
+		int i = 0;
+		for (InvertedIndex other : others) {
+			documentMaps[i++] = documentMap(other);
+		}
+
+		lock.lockWrite();
+		changed();
+		try {
+			ArrayList<TreeMap<String, PostingList>> parts = new ArrayList<TreeMap<String, PostingList>>(
+					bounds.length + 1);
+			ArrayList<HashMap<String, PostingList>> mergedWords = new ArrayList<HashMap<String, PostingList>>(
+					bounds.length + 1);
+			Thread[] mergers = new Thread[bounds.length + 1];
+			for (int part = 0; part < mergers.length; part++) {
+				String from = part == 0 ? null : bounds[part - 1];
+				String to = part == bounds.length ? null : bounds[part];
+				TreeMap<String, PostingList> merged = new TreeMap<String, PostingList>(range(wordIndex, from, to));
+				parts.add(merged);
+				HashMap<String, PostingList> hashed = new HashMap<String, PostingList>();
+				mergedWords.add(hashed);
+
+				ArrayList<MergeCursor> cursors = new ArrayList<MergeCursor>();
+				i = 0;
+				for (InvertedIndex other : others) {
+					cursors.add(new MergeCursor(range(other.wordIndex, from, to), documentMaps[i], i));
+					i++;
+				}
+
+				mergers[part] = new Thread(() -> merge(cursors, merged, hashed), "merge-" + part);
+				mergers[part].start();
 			}
-			else {
 
-				for (String path : other.wordIndex.get(word).keySet()){
-					
-					if (wordIndex.get(word).containsKey(path) == false){
-						
-					wordIndex.get(word).put(path, other.wordIndex.get(word).get(path));
-					}
-					else{
-						wordIndex.get(word).get(path).addAll(other.wordIndex.get(word).get(path));
+			boolean interrupted = false;
+			for (Thread merger : mergers) {
+				while (merger.isAlive()) {
+					try {
+						merger.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
 					}
 				}
 			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
 
-			
+			wordIndex.clear();
+			for (TreeMap<String, PostingList> part : parts) {
+				wordIndex.putAll(part);
+			}
+			for (HashMap<String, PostingList> hashed : mergedWords) {
+				exactWords.putAll(hashed);
+			}
+		} finally {
+			lock.unlockWrite();
 		}
+		logger.debug("Merged {} indexes in {} ranges", others.size(), bounds.length + 1);
+	}
+
+	/**
+	 * Merges the words of several cursors into a map in a single k-way pass.
+	 * Postings already in the map come first, then those of each cursor in
+	 * cursor order.
+	 * 
+	 * @param cursors
+	 *            - cursors over the indexes to merge
+	 * @param target
+	 *            - map to merge into
+	 * @param hashed
+	 *            - map to also put every merged word into
+	 */
+	private static void merge(ArrayList<MergeCursor> cursors, TreeMap<String, PostingList> target,
+			Map<String, PostingList> hashed) {
+		PriorityQueue<MergeCursor> queue = new PriorityQueue<>();
+		for (MergeCursor cursor : cursors) {
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+
+		PostingList[] lists = new PostingList[cursors.size() + 1];
+		ArrayList<MergeCursor> matched = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			String word = queue.peek().word;
+			int count = 0;
+
+			PostingList existing = target.get(word);
+			if (existing != null) {
+				lists[count++] = existing;
+			}
+			while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+				MergeCursor cursor = queue.poll();
+				lists[count++] = cursor.postings();
+				matched.add(cursor);
+			}
+
+			PostingList merged = PostingList.merge(lists, count);
+			target.put(word, merged);
+			hashed.put(word, merged);
+
+			for (MergeCursor cursor : matched) {
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			matched.clear();
+		}
+	}
+
+	/**
+	 * Picks words that split the combined words of several indexes into
+	 * ranges holding about the same number of positions. Each index is
+	 * sampled every so many positions, and the samples are cut into equal
+	 * groups.
+	 * 
+	 * @param others
+	 *            - indexes to be merged
+	 * @param ranges
+	 *            - number of ranges wanted
+	 * @return sorted, distinct split words, fewer than ranges if there are
+	 *         not enough words
+	 */
+	private static String[] splitPoints(Collection<InvertedIndex> others, int ranges) {
+		long total = 0;
+		for (InvertedIndex other : others) {
+			for (PostingList postings : other.wordIndex.values()) {
+				total += postings.positions();
+			}
+		}
+		long step = Math.max(1, total / (ranges * 64L));
+
+		ArrayList<String> samples = new ArrayList<String>();
+		for (InvertedIndex other : others) {
+			long seen = 0;
+			for (Map.Entry<String, PostingList> entry : other.wordIndex.entrySet()) {
+				seen += entry.getValue().positions();
+				while (seen >= step) {
+					samples.add(entry.getKey());
+					seen -= step;
+				}
+			}
+		}
+		Collections.sort(samples);
+
+		ArrayList<String> bounds = new ArrayList<String>(ranges - 1);
+		for (int i = 1; i < ranges; i++) {
+			int index = (int) ((long) samples.size() * i / ranges);
+			if (index >= samples.size()) {
+				break;
+			}
+			String bound = samples.get(index);
+			if ((bounds.isEmpty() || bounds.get(bounds.size() - 1).compareTo(bound) < 0)
+					&& samples.get(0).compareTo(bound) < 0) {
+				bounds.add(bound);
+			}
+		}
+		return bounds.toArray(new String[0]);
+	}
+
+	/**
+	 * Returns the part of a word map between two words.
+	 * 
+	 * @param words
+	 *            - map of words
+	 * @param from
+	 *            - first word of the range, or null to start at the first word
+	 * @param to
+	 *            - word after the range, or null to go to the last word
+	 * @return view of the range
+	 */
+	private static SortedMap<String, PostingList> range(TreeMap<String, PostingList> words,
+			String from, String to) {
+		if (from == null) {
+			return to == null ? words : words.headMap(to);
+		}
+		return to == null ? words.tailMap(from) : words.subMap(from, to);
+	}
+
+	/**
+	 * Removes every position of the given documents from the index. Words
+	 * that are left without any documents are removed too. The documents
+	 * keep their ids, so they can be added again later.
+	 * 
+	 * @param removed
+	 *            - ids of the documents to remove
+	 */
+	public void removeAll(BitSet removed) {
+		lock.lockWrite();
+		changed();
+		Iterator<Map.Entry<String, PostingList>> iterator = wordIndex.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, PostingList> entry = iterator.next();
+			PostingList postings = entry.getValue();
+			if (postings.removeAll(removed) && postings.size() == 0) {
+				iterator.remove();
+				exactWords.remove(entry.getKey());
+			}
+		}
+		lock.unlockWrite();
+	}
+
+	/**
+	 * Removes every word from the index. The documents keep their ids. Used
+	 * to free a shard once its words are merged into another index.
+	 */
+	public void clear() {
+		lock.lockWrite();
+		changed();
+		wordIndex.clear();
+		exactWords.clear();
 		lock.unlockWrite();
 	}
 
+	/**
+	 * Maps the document ids of another index to ids in this index.
+	 * 
+	 * @param other
+	 *            - index being merged into this one
+	 * @return map from the other index's ids to ids in this index, or null if
+	 *         both indexes share the same {@link DocumentTable}
+	 */
+	private int[] documentMap(InvertedIndex other) {
+		if (other.documents == documents) {
+			return null;
+		}
+
+		int[] documentMap = new int[other.documents.size()];
+		for (int i = 0; i < documentMap.length; i++) {
+			documentMap[i] = documents.add(other.documents.getPath(i));
+		}
+		return documentMap;
+	}
+
+	/**
+	 * Walks the words of one index in sorted order during
+	 * {@link InvertedIndex#addAll(Collection)}.
+	 */
+	private static class MergeCursor implements Comparable<MergeCursor> {
+
+		private final Iterator<Map.Entry<String, PostingList>> entries;
+		private final int[] documentMap;
+		private final int order;
+		private String word;
+		private PostingList postings;
+
+		/**
+		 * Creates a cursor positioned before the first word of an index.
+		 * 
+		 * @param words
+		 *            - words of the index to walk, or a range of them
+		 * @param documentMap
+		 *            - map to this index's document ids, or null if not needed
+		 * @param order
+		 *            - position of the index among those merged, cursors on
+		 *            the same word are merged in this order
+		 */
+		public MergeCursor(SortedMap<String, PostingList> words, int[] documentMap, int order) {
+			this.entries = words.entrySet().iterator();
+			this.documentMap = documentMap;
+			this.order = order;
+		}
+
+		/**
+		 * Moves to the next word.
+		 * 
+		 * @return false if there are no words left
+		 */
+		public boolean advance() {
+			if (!entries.hasNext()) {
+				return false;
+			}
+			Map.Entry<String, PostingList> entry = entries.next();
+			word = entry.getKey();
+			postings = entry.getValue();
+			return true;
+		}
+
+		/**
+		 * Returns the postings of the current word, using the merging index's
+		 * document ids.
+		 * 
+		 * @return postings of the current word
+		 */
+		public PostingList postings() {
+			if (documentMap == null) {
+				return postings;
+			}
+			PostingList translated = new PostingList(postings.size(), postings.positions());
+			translated.addAll(postings, documentMap);
+			return translated;
+		}
+
+		@Override
+		public int compareTo(MergeCursor other) {
+			int compare = word.compareTo(other.word);
+			return compare != 0 ? compare : Integer.compare(order, other.order);
+		}
+	}
+
 	/**
 	 * Efficiently returns partial search results from your inverted index, such
 	 * that any word in your inverted index that starts with a query word has its results
@@ -90,44 +669,602 @@ public class InvertedIndex {
 	 * @param List<String> queryWords
 	 *            
 	 */
+	@Override
 	public ArrayList<SearchResult> search(List<String> queryWords) {
-		ArrayList<SearchResult> results = new ArrayList<SearchResult>();
-		HashMap<String, SearchResult> pathresults = new HashMap<String, SearchResult>();
+		return search(queryWords, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns exact search results, such that only words in the index equal
+	 * to a query word have their results returned. Each query word is a
+	 * single hash lookup instead of a walk of the sorted words.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords) {
+		return search(queryWords, true, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(List<String> queryWords, int k) {
+		return search(queryWords, false, k);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords, int k) {
+		return search(queryWords, true, k);
+	}
+
+	@Override
+	public ArrayList<SearchResult> rankedSearch(List<String> queryWords, boolean exact, int k) {
+		return search(queryWords, exact, k, true);
+	}
+
+	/**
+	 * Returns the best k documents matching a boolean query. The documents of
+	 * each clause are found by intersecting the posting lists of its words,
+	 * rarest first: the rarest word proposes a document, every other word
+	 * skips ahead to it using its skip table, and a word that skips past it
+	 * proposes the next document to try. Selective clauses so cost about the
+	 * length of their rarest word's list, not of the union of all of them.
+	 * Positions are decoded to check phrases only for the documents holding
+	 * every word, and counts and scores are then added up only for the
+	 * matching documents.
+	 * 
+	 * @param query
+	 *            - parsed query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k sorted results
+	 */
+	@Override
+	public ArrayList<SearchResult> search(BooleanQuery query, boolean exact, boolean ranked, int k) {
 		lock.lockRead();
-		for (String query : queryWords) {
-			String curword = wordIndex.ceilingKey(query);
-			
-			while (curword != null) {
-				if (!curword.startsWith(query)) {
+		try {
+			BitSet matched = new BitSet();
+			for (BooleanQuery.Clause clause : query.getClauses()) {
+				intersect(clause, exact, matched);
+			}
+
+			SearchTotals totals = new SearchTotals(ranked);
+			double averageLength = documents.averageLength();
+			for (String word : query.getWords()) {
+				TermCursor term = termCursor(word, exact, ranked);
+				for (int document = matched.nextSetBit(0); document >= 0
+						&& term.advance(document); document = matched.nextSetBit(document + 1)) {
+					if (term.document == document) {
+						term.addTo(document, totals, averageLength);
+					}
+				}
+			}
+			return SearchResult.top(documents, totals, k);
+		} finally {
+			lock.unlockRead();
+		}
+	}
+
+	/**
+	 * Finds the documents holding every required word and phrase of a clause
+	 * and none of the excluded ones. Must be called while holding the read
+	 * lock.
+	 * 
+	 * @param clause
+	 *            - clause of a boolean query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param matched
+	 *            - set to add the ids of the documents found to
+	 */
+	private void intersect(BooleanQuery.Clause clause, boolean exact, BitSet matched) {
+		HashMap<String, TermCursor> terms = new HashMap<String, TermCursor>();
+		TermCursor[] required = new TermCursor[clause.getRequired().size()];
+		for (int i = 0; i < required.length; i++) {
+			required[i] = terms.computeIfAbsent(clause.getRequired().get(i), word -> termCursor(word, exact, false));
+		}
+		TermCursor[] excluded = new TermCursor[clause.getExcluded().size()];
+		for (int i = 0; i < excluded.length; i++) {
+			excluded[i] = termCursor(clause.getExcluded().get(i), exact, false);
+		}
+		for (BooleanQuery.Phrase phrase : clause.getExcludedPhrases()) {
+			for (String word : phrase.getWords()) {
+				terms.computeIfAbsent(word, w -> termCursor(w, exact, false));
+			}
+		}
+
+		Arrays.sort(required, (a, b) -> Integer.compare(a.frequency, b.frequency));
+		int target = 0;
+		search: while (required[0].advance(target)) {
+			int candidate = required[0].document;
+			for (int i = 1; i < required.length; i++) {
+				if (!required[i].advance(candidate)) {
+					return;
+				}
+				if (required[i].document != candidate) {
+					target = required[i].document;
+					continue search;
+				}
+			}
+			target = candidate + 1;
+			for (TermCursor term : excluded) {
+				if (term.advance(candidate) && term.document == candidate) {
+					continue search;
+				}
+			}
+			for (BooleanQuery.Phrase phrase : clause.getPhrases()) {
+				if (!contains(phrase, terms, candidate)) {
+					continue search;
+				}
+			}
+			for (BooleanQuery.Phrase phrase : clause.getExcludedPhrases()) {
+				if (contains(phrase, terms, candidate)) {
+					continue search;
+				}
+			}
+			matched.set(candidate);
+		}
+	}
+
+	/**
+	 * Checks whether a document holds a phrase, decoding the positions of its
+	 * words in that document only.
+	 * 
+	 * @param phrase
+	 *            - phrase to find
+	 * @param terms
+	 *            - cursor of each word of the phrase
+	 * @param document
+	 *            - document id, not before the current document of any of the
+	 *            cursors
+	 * @return true if the document holds the phrase
+	 */
+	private static boolean contains(BooleanQuery.Phrase phrase, Map<String, TermCursor> terms, int document) {
+		List<String> words = phrase.getWords();
+		int[][] positions = new int[words.size()][];
+		for (int i = 0; i < positions.length; i++) {
+			TermCursor term = terms.get(words.get(i));
+			if (!term.advance(document) || term.document != document) {
+				return false;
+			}
+			positions[i] = term.positions(document);
+		}
+		return phrase.matches(positions);
+	}
+
+	@Override
+	public Map<Integer, int[]> positions(String queryWord, boolean exact, BitSet documents) {
+		HashMap<Integer, int[]> positions = new HashMap<Integer, int[]>();
+		lock.lockRead();
+		try {
+			TermCursor term = termCursor(queryWord, exact, false);
+			for (int document = documents.nextSetBit(0); document >= 0
+					&& term.advance(document); document = documents.nextSetBit(document + 1)) {
+				if (term.document == document) {
+					positions.put(document, term.positions(document));
+				}
+			}
+		} finally {
+			lock.unlockRead();
+		}
+		return positions;
+	}
+
+	/**
+	 * Creates a cursor over the documents of every word matching a query
+	 * word. Must be called while holding the read lock.
+	 * 
+	 * @param query
+	 *            - cleaned query word
+	 * @param exact
+	 *            - true to match the whole word, false to match it as a prefix
+	 * @param ranked
+	 *            - true to weigh each word for {@link BM25} scores
+	 * @return cursor over the matching words
+	 */
+	private TermCursor termCursor(String query, boolean exact, boolean ranked) {
+		ArrayList<PostingList> lists = new ArrayList<PostingList>();
+		if (exact) {
+			PostingList postings = exactWords.get(query);
+			if (postings != null) {
+				lists.add(postings);
+			}
+		} else {
+			for (Map.Entry<String, PostingList> entry : wordIndex.tailMap(query).entrySet()) {
+				if (!entry.getKey().startsWith(query)) {
 					break;
 				}
-				
-				int totalcount;
-				int firstloc;
-				
-				for (String path : wordIndex.get(curword).keySet()) {
-					totalcount = wordIndex.get(curword).get(path).size();
-					firstloc = wordIndex.get(curword).get(path).get(0);
-					
-					if (pathresults.containsKey(path)) {
-						pathresults.get(path).updateAddResults(totalcount, firstloc);
-					} else {
-						SearchResult updatingPath = new SearchResult(path, totalcount,
-								firstloc);
-						pathresults.put(path, updatingPath);
+				lists.add(entry.getValue());
+			}
+		}
+		return new TermCursor(lists, ranked ? Math.max(1, documents.liveCount()) : 0);
+	}
+
+	/**
+	 * Walks the union of the documents of several words, the words matching
+	 * one query word, in ascending order.
+	 */
+	private class TermCursor {
+
+		private final PostingList.Cursor[] cursors;
+		private final double[] idfs;
+		private final int frequency;
+		private int document;
+
+		/**
+		 * Creates a cursor positioned before the first document.
+		 * 
+		 * @param lists
+		 *            - postings of the words
+		 * @param documentCount
+		 *            - number of documents to weigh the words by, or 0 if
+		 *            the search is not ranked
+		 */
+		public TermCursor(List<PostingList> lists, int documentCount) {
+			cursors = new PostingList.Cursor[lists.size()];
+			idfs = documentCount > 0 ? new double[cursors.length] : null;
+			int total = 0;
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i] = lists.get(i).cursor();
+				total += lists.get(i).size();
+				if (idfs != null) {
+					idfs[i] = BM25.idf(lists.get(i).size(), documentCount);
+				}
+			}
+			frequency = total;
+			document = -1;
+		}
+
+		/**
+		 * Moves to the first document at or after the target that any of the
+		 * words is found in.
+		 * 
+		 * @param target
+		 *            - smallest document id wanted
+		 * @return false if there is no such document
+		 */
+		public boolean advance(int target) {
+			if (document >= target) {
+				return document != Integer.MAX_VALUE;
+			}
+			int lowest = Integer.MAX_VALUE;
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i] == null) {
+					continue;
+				}
+				if (!cursors[i].advance(target)) {
+					cursors[i] = null;
+				} else if (cursors[i].document() < lowest) {
+					lowest = cursors[i].document();
+				}
+			}
+			document = lowest;
+			return document != Integer.MAX_VALUE;
+		}
+
+		/**
+		 * Decodes the positions of the words found in the current document.
+		 * 
+		 * @param document
+		 *            - current document
+		 * @return sorted positions
+		 */
+		public int[] positions(int document) {
+			int[] positions = new int[0];
+			for (PostingList.Cursor cursor : cursors) {
+				if (cursor == null || cursor.document() != document) {
+					continue;
+				}
+				int count = positions.length;
+				positions = Arrays.copyOf(positions, count + cursor.count());
+				System.arraycopy(cursor.positions(null), 0, positions, count, cursor.count());
+				if (count > 0) {
+					Arrays.sort(positions);
+				}
+			}
+			return positions;
+		}
+
+		/**
+		 * Adds the postings of the words found in the current document to
+		 * per-document search totals, and to the scores of a ranked search.
+		 * 
+		 * @param document
+		 *            - current document
+		 * @param totals
+		 *            - search totals of the documents found so far
+		 * @param averageLength
+		 *            - average number of words in a document
+		 */
+		public void addTo(int document, SearchTotals totals, double averageLength) {
+			for (int i = 0; i < cursors.length; i++) {
+				PostingList.Cursor cursor = cursors[i];
+				if (cursor == null || cursor.document() != document) {
+					continue;
+				}
+				double score = totals.isRanked()
+						? BM25.score(idfs[i], cursor.count(), documents.getLength(document), averageLength)
+						: 0;
+				totals.add(document, cursor.count(), cursor.first(), score);
+			}
+		}
+	}
+
+	/**
+	 * Adds the count and earliest position of every document of every word
+	 * matching a query to per-word totals. Used to rank an index split in
+	 * several parts, where one document can be split over several parts: the
+	 * counts of a word in a document are added up over all parts before the
+	 * document is scored, and the number of documents a word is found in is
+	 * the number of documents in its totals. A word matched by several query
+	 * words, such as a repeated word or overlapping prefixes, is added once.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param terms
+	 *            - map from word to the totals of its documents to add to
+	 */
+	public void addTerms(List<String> queryWords, boolean exact, Map<String, SearchTotals> terms) {
+		HashMap<String, PostingList> matched = new HashMap<String, PostingList>();
+		lock.lockRead();
+		try {
+			for (String query : queryWords) {
+				if (exact) {
+					PostingList postings = exactWords.get(query);
+					if (postings != null) {
+						matched.put(query, postings);
+					}
+					continue;
+				}
+				for (Map.Entry<String, PostingList> entry : wordIndex.tailMap(query).entrySet()) {
+					if (!entry.getKey().startsWith(query)) {
+						break;
 					}
+					matched.put(entry.getKey(), entry.getValue());
+				}
+			}
+			for (Map.Entry<String, PostingList> entry : matched.entrySet()) {
+				SearchTotals totals = terms.computeIfAbsent(entry.getKey(), word -> new SearchTotals(false));
+				PostingList.Cursor cursor = entry.getValue().cursor();
+				while (cursor.next()) {
+					totals.add(cursor.document(), cursor.count(), cursor.first());
 				}
-				
-				curword = wordIndex.higherKey(curword);
 			}
+		} finally {
+			lock.unlockRead();
+		}
+	}
 
+	/**
+	 * Runs an unranked exact or partial search.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by
+	 *         {@link SearchResult#compareTo(SearchResult)}
+	 */
+	private ArrayList<SearchResult> search(List<String> queryWords, boolean exact, int k) {
+		return search(queryWords, exact, k, false);
+	}
+
+	/**
+	 * Runs an exact or partial search. Exact searches run optimistically if
+	 * the lock allows it, since they only look each query word up in the hash
+	 * of the words and decode that word's postings. Partial searches walk the
+	 * sorted words, which a write rebalancing the tree midway could send round
+	 * in circles, and may fill the prefix cache, so they always hold the read
+	 * lock.
+	 * 
+	 * An optimistic search reads the posting lists and the document table,
+	 * neither of which is safe to read during a write, so it may see a torn
+	 * list: a stale array with a newer length, or blocks shifted by an
+	 * out-of-order insert. The work stays bounded anyway. The hash is
+	 * concurrent, a cursor never reads past the length it started with and
+	 * moves forward on every block, and the stamp is checked after each query
+	 * word, so a write costs at most one more posting list. Whatever a torn
+	 * read throws, including an error such as a huge array size decoded from
+	 * shifted bytes, is caught and the search is run again under the read
+	 * lock, as is one whose stamp is no longer valid.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @return at most k sorted results
+	 */
+	private ArrayList<SearchResult> search(List<String> queryWords, boolean exact, int k,
+			boolean ranked) {
+		ArrayList<SearchResult> results = null;
+		long stamp = exact ? lock.tryOptimisticRead() : 0;
+		if (stamp != 0) {
+			try {
+				results = searchUnlocked(queryWords, exact, k, ranked, stamp);
+			} catch (Throwable e) {
+				// A write changed the index mid-search, retried below.
+				results = null;
+			}
+			if (!lock.validate(stamp)) {
+				results = null;
+			}
+		}
+
+		if (results == null) {
+			lock.lockRead();
+			try {
+				if (!exact && !ranked && prefixLength > 0 && prefixes == null) {
+					prefixes = new PrefixIndex(wordIndex, prefixLength);
+					logger.debug("Built prefix index of {} prefixes", prefixes.size());
+				}
+				if (!exact && !ranked && prefixCacheSize > 0 && prefixCache == null) {
+					prefixCache = new PrefixCache(prefixCacheSize);
+				}
+				results = searchUnlocked(queryWords, exact, k, ranked, 0);
+			} finally {
+				lock.unlockRead();
+			}
 		}
-		lock.unlockRead();
-		results.addAll(pathresults.values());
-		Collections.sort(results);
 		return results;
 	}
 
+	/**
+	 * Runs {@link #search(List, boolean, int, boolean)} without taking the
+	 * lock. Callers must hold the read lock, or for exact searches only, pass
+	 * the stamp of an optimistic read and validate it again afterwards. Exact
+	 * searches look each word up in the hash of the words. Unranked partial
+	 * searches answer query words covered by the prefix index, if it is
+	 * built, from it, and other query words matching many words from the
+	 * prefix cache. Ranked searches score each matching word on its own, so
+	 * they walk the words instead.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @param stamp
+	 *            - stamp of the optimistic read to check after each query
+	 *            word, or 0 if holding the read lock
+	 * @return at most k sorted search results, or null if the stamp stopped
+	 *         being valid
+	 */
+	private ArrayList<SearchResult> searchUnlocked(List<String> queryWords, boolean exact, int k,
+			boolean ranked, long stamp) {
+		SearchTotals totals = new SearchTotals(ranked);
+		double averageLength = ranked ? documents.averageLength() : 0;
+		int documentCount = ranked ? Math.max(1, documents.liveCount()) : 0;
+		PrefixIndex prefixes = ranked ? null : this.prefixes;
+		PrefixCache prefixCache = ranked ? null : this.prefixCache;
+		for (String query : queryWords) {
+			if (exact) {
+				PostingList postings = exactWords.get(query);
+				if (postings != null) {
+					addPostings(postings, idf(postings, documentCount), totals, averageLength);
+				}
+				if (stamp != 0 && !lock.validate(stamp)) {
+					return null;
+				}
+				continue;
+			}
+			if (prefixes != null && prefixes.covers(query)) {
+				prefixes.addTo(query, totals);
+				continue;
+			}
+			if (prefixCache != null) {
+				PrefixIndex.Aggregate aggregate = prefixCache.get(query);
+				if (aggregate == null) {
+					aggregate = aggregate(query);
+					if (aggregate != null) {
+						prefixCache.put(query, aggregate);
+					}
+				}
+				if (aggregate != null) {
+					aggregate.addTo(totals);
+					continue;
+				}
+			}
+			for (Map.Entry<String, PostingList> entry : wordIndex.tailMap(query).entrySet()) {
+				if (!entry.getKey().startsWith(query)) {
+					break;
+				}
+				addPostings(entry.getValue(), idf(entry.getValue(), documentCount), totals, averageLength);
+			}
+
+		}
+		return SearchResult.top(documents, totals, k);
+	}
+
+	/**
+	 * Aggregates the postings of every word starting with a query word, if
+	 * there are enough of them for the aggregate to be worth caching. Must be
+	 * called while holding the read lock.
+	 * 
+	 * @param query
+	 *            - cleaned query word
+	 * @return aggregate of the matching words, or null if fewer than
+	 *         {@link PrefixCache#MIN_WORDS} words match
+	 */
+	private PrefixIndex.Aggregate aggregate(String query) {
+		SortedMap<String, PostingList> matching = wordIndex.tailMap(query);
+		int words = 0;
+		for (String word : matching.keySet()) {
+			if (!word.startsWith(query) || ++words == PrefixCache.MIN_WORDS) {
+				break;
+			}
+		}
+		if (words < PrefixCache.MIN_WORDS) {
+			return null;
+		}
+
+		PrefixIndex.Builder builder = new PrefixIndex.Builder();
+		for (Map.Entry<String, PostingList> entry : matching.entrySet()) {
+			if (!entry.getKey().startsWith(query)) {
+				break;
+			}
+			builder.add(entry.getValue());
+		}
+		return builder.finish();
+	}
+
+	/**
+	 * Returns the inverse document frequency of a matching word for a ranked
+	 * search.
+	 * 
+	 * @param postings
+	 *            - postings of the word
+	 * @param documentCount
+	 *            - number of documents in the index, or 0 if the search is
+	 *            not ranked
+	 * @return weight of the word, or 0 if the search is not ranked
+	 */
+	private double idf(PostingList postings, int documentCount) {
+		if (documentCount == 0) {
+			return 0;
+		}
+		return BM25.idf(postings.size(), documentCount);
+	}
+
+	/**
+	 * Adds the postings of one matching word to per-document search totals,
+	 * and to the scores of a ranked search.
+	 * 
+	 * @param postings
+	 *            - postings of the word
+	 * @param idf
+	 *            - inverse document frequency of the word
+	 * @param totals
+	 *            - search totals of the documents found so far
+	 * @param averageLength
+	 *            - average number of words in a document
+	 */
+	private void addPostings(PostingList postings, double idf, SearchTotals totals, double averageLength) {
+		boolean ranked = totals.isRanked();
+		PostingList.Cursor cursor = postings.cursor();
+		while (cursor.next()) {
+			int document = cursor.document();
+			double score = ranked ? BM25.score(idf, cursor.count(), documents.getLength(document), averageLength)
+					: 0;
+			totals.add(document, cursor.count(), cursor.first(), score);
+		}
+	}
+
 	/**
 	 * Prints the inverted index to a passed in file.
 	 * 
@@ -135,19 +1272,34 @@ public class InvertedIndex {
 	 * @param outpath
 	 *            - Location Where the Index will be written too
 	 */
+	@Override
 	public void print(String outpath) {
 		Path opath = Paths.get(outpath).toAbsolutePath().normalize();
 		lock.lockRead();
 		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(
 				opath, Charset.forName("UTF-8")));
 		) {
+			int[] pathorder = pathOrder();
 			for (String f : wordIndex.keySet()) {
 
 				writer.print(f);
-				for (String p : wordIndex.get(f).keySet()) {
-					writer.print("\n" + "\"" + p + "\"");
-					for (Integer i : wordIndex.get(f).get(p)) {
-						writer.print(", " + i);
+				PostingList postings = wordIndex.get(f);
+				PostingList.Cursor cursor = postings.cursor();
+				int[] documents = new int[postings.size()];
+				int[][] positions = new int[documents.length][];
+				long[] slots = new long[documents.length];
+				for (int slot = 0; cursor.next(); slot++) {
+					documents[slot] = cursor.document();
+					positions[slot] = cursor.positions(null);
+					slots[slot] = ((long) pathorder[documents[slot]] << 32) | slot;
+				}
+				Arrays.sort(slots);
+
+				for (long sorted : slots) {
+					int slot = (int) sorted;
+					writer.print("\n" + "\"" + this.documents.getPath(documents[slot]) + "\"");
+					for (int position : positions[slot]) {
+						writer.print(", " + position);
 					}
 				}
 				writer.println();
@@ -159,5 +1311,122 @@ public class InvertedIndex {
 		}
 		lock.unlockRead();
 	}
+
+	/**
+	 * Writes the index to a binary file that {@link #load(Path)} can read
+	 * back much faster than rebuilding the index from the text files.
+	 * 
+	 * Removed documents keep their id in the {@link DocumentTable}, so an
+	 * index updated again and again would save more and more dead paths.
+	 * Only documents found in some posting list are saved: if any other id
+	 * is in the table, the saved documents get new ids, in the same order,
+	 * and every posting list is written with those ids.
+	 * 
+	 * @param outpath
+	 *            - Location where the binary index will be written
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @see IndexFileWriter
+	 */
+	public void save(Path outpath) throws IOException {
+		lock.lockRead();
+		try (IndexFileWriter writer = new IndexFileWriter(outpath)) {
+			BitSet found = new BitSet(documents.size());
+			for (PostingList postings : wordIndex.values()) {
+				PostingList.Cursor cursor = postings.cursor();
+				while (cursor.next()) {
+					found.set(cursor.document());
+				}
+			}
+			if (found.cardinality() == documents.size()) {
+				for (String word : wordIndex.keySet()) {
+					writer.writeTerm(word, wordIndex.get(word));
+				}
+				writer.writeDocuments(documents);
+				return;
+			}
+
+			logger.debug("Saving {} of {} documents, leaving out removed ones", found.cardinality(),
+					documents.size());
+			DocumentTable saved = new DocumentTable();
+			int[] documentMap = new int[documents.size()];
+			for (int document = found.nextSetBit(0); document >= 0; document = found.nextSetBit(document + 1)) {
+				documentMap[document] = saved.add(documents.getPath(document));
+				saved.setLength(documentMap[document], documents.getLength(document));
+			}
+			for (Map.Entry<String, PostingList> entry : wordIndex.entrySet()) {
+				PostingList postings = new PostingList();
+				postings.addAll(entry.getValue(), documentMap);
+				writer.writeTerm(entry.getKey(), postings);
+			}
+			writer.writeDocuments(saved);
+		} finally {
+			lock.unlockRead();
+		}
+	}
+
+	/**
+	 * Adds every word of a binary index file written by {@link #save(Path)}
+	 * to this index.
+	 * 
+	 * @param inpath
+	 *            - Location of the binary index
+	 * @throws IOException
+	 *             if the file cannot be read or is not an index file
+	 */
+	public void load(Path inpath) throws IOException {
+		try (IndexFileReader reader = new IndexFileReader(inpath)) {
+			DocumentTable stored = reader.getDocuments();
+			int[] documentMap = new int[stored.size()];
+			boolean ordered = true;
+			for (int i = 0; i < documentMap.length; i++) {
+				documentMap[i] = documents.add(stored.getPath(i));
+				if (stored.getLength(i) > 0) {
+					documents.setLength(documentMap[i], stored.getLength(i));
+				}
+				ordered = ordered && (i == 0 || documentMap[i] > documentMap[i - 1]);
+			}
+
+			lock.lockWrite();
+			changed();
+			try {
+				while (reader.next()) {
+					PostingList postings = exactWords.get(reader.getTerm());
+					if (postings == null && ordered) {
+						putWord(reader.getTerm(), reader.getPostings(documentMap));
+					} else {
+						PostingList loaded = reader.getPostings(null);
+						if (postings == null) {
+							postings = new PostingList(loaded.size(), loaded.positions());
+							putWord(reader.getTerm(), postings);
+						}
+						postings.addAll(loaded, documentMap);
+					}
+				}
+			} finally {
+				lock.unlockWrite();
+			}
+		}
+	}
+
+	/**
+	 * Ranks every document id by its path, so postings can be printed in the
+	 * same alphabetical path order as before ids were introduced.
+	 * 
+	 * @return array mapping a document id to its rank
+	 */
+	private int[] pathOrder() {
+		Integer[] ids = new Integer[documents.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		Arrays.sort(ids, (a, b) -> documents.getPath(a).compareTo(documents.getPath(b)));
+
+		int[] order = new int[ids.length];
+		for (int rank = 0; rank < ids.length; rank++) {
+			order[ids[rank]] = rank;
+		}
+		return order;
+	}
 	
 }
@@ -0,0 +1,101 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often an {@link IndexLock} is acquired in each mode, how often a
+ * thread had to wait for it, and how long those waits took in total.
+ */
+public class LockCounters {
+
+	private final LongAdder reads;
+	private final LongAdder readWaits;
+	private final LongAdder readWaitNanos;
+	private final LongAdder writes;
+	private final LongAdder writeWaits;
+	private final LongAdder writeWaitNanos;
+	private final LongAdder optimisticReads;
+	private final LongAdder optimisticFailures;
+
+	/**
+	 * Creates counters that all start at zero.
+	 */
+	public LockCounters() {
+		reads = new LongAdder();
+		readWaits = new LongAdder();
+		readWaitNanos = new LongAdder();
+		writes = new LongAdder();
+		writeWaits = new LongAdder();
+		writeWaitNanos = new LongAdder();
+		optimisticReads = new LongAdder();
+		optimisticFailures = new LongAdder();
+	}
+
+	/**
+	 * Records that a read lock was acquired.
+	 * 
+	 * @param waited
+	 *            - nanoseconds spent waiting, or 0 if it was acquired right away
+	 */
+	public void read(long waited) {
+		reads.increment();
+		if (waited > 0) {
+			readWaits.increment();
+			readWaitNanos.add(waited);
+		}
+	}
+
+	/**
+	 * Records that a write lock was acquired.
+	 * 
+	 * @param waited
+	 *            - nanoseconds spent waiting, or 0 if it was acquired right away
+	 */
+	public void write(long waited) {
+		writes.increment();
+		if (waited > 0) {
+			writeWaits.increment();
+			writeWaitNanos.add(waited);
+		}
+	}
+
+	/**
+	 * Records an optimistic read and whether it had to be retried under a
+	 * read lock.
+	 * 
+	 * @param valid
+	 *            - true if no write happened during the read
+	 */
+	public void optimisticRead(boolean valid) {
+		optimisticReads.increment();
+		if (!valid) {
+			optimisticFailures.increment();
+		}
+	}
+
+	/**
+	 * Returns the total time threads spent waiting for a read lock.
+	 * 
+	 * @return wait time in nanoseconds
+	 */
+	public long getReadWaitNanos() {
+		return readWaitNanos.sum();
+	}
+
+	/**
+	 * Returns the total time threads spent waiting for a write lock.
+	 * 
+	 * @return wait time in nanoseconds
+	 */
+	public long getWriteWaitNanos() {
+		return writeWaitNanos.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("reads: %d (%d waited, %d ms), writes: %d (%d waited, %d ms), "
+				+ "optimistic reads: %d (%d retried)",
+				reads.sum(), readWaits.sum(), TimeUnit.NANOSECONDS.toMillis(readWaitNanos.sum()),
+				writes.sum(), writeWaits.sum(), TimeUnit.NANOSECONDS.toMillis(writeWaitNanos.sum()),
+				optimisticReads.sum(), optimisticFailures.sum());
+	}
+}
@@ -0,0 +1,456 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only index that searches an index file written by
+ * {@link IndexFileWriter} in place, through a memory-mapped view of the file.
+ * Only the document table is read onto the heap. Terms are found by binary
+ * search over the file's term table, and their postings are read straight
+ * from the mapped bytes, skipping position lists search does not need.
+ *
+ * The operating system's page cache does the loading, so opening is nearly
+ * instant and the index may be larger than the Java heap.
+ */
+public class MappedIndex implements SearchableIndex {
+
+	/** Files are mapped in regions of 2^REGION_BITS bytes. */
+	private static final int REGION_BITS = 30;
+
+	private static final long REGION_MASK = (1L << REGION_BITS) - 1;
+
+	private final MappedByteBuffer[] regions;
+	private final DocumentTable documents;
+	private final int terms;
+	private final long termTable;
+
+	/**
+	 * Maps an index file and reads its document table.
+	 *
+	 * @param path
+	 *            - index file written by {@link IndexFileWriter}
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not an index file
+	 */
+	public MappedIndex(Path path) throws IOException {
+		try (IndexFileReader reader = new IndexFileReader(path);
+				FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			documents = reader.getDocuments();
+			terms = reader.getTerms();
+
+			long size = channel.size();
+			regions = new MappedByteBuffer[(int) ((size + REGION_MASK) >>> REGION_BITS)];
+			for (int i = 0; i < regions.length; i++) {
+				long offset = (long) i << REGION_BITS;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(size - offset, 1L << REGION_BITS));
+			}
+		}
+
+		termTable = getLong(16);
+	}
+
+	/**
+	 * Returns the table mapping document ids in this index to paths.
+	 *
+	 * @return document table
+	 */
+	@Override
+	public DocumentTable getDocuments() {
+		return documents;
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(List<String> queryWords) {
+		return search(queryWords, false, Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Returns exact search results. The file holds no hash of its terms, so
+	 * each query word is still found by a binary search of the term table,
+	 * but only the term equal to it is read.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords) {
+		return search(queryWords, true, Integer.MAX_VALUE, false);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(List<String> queryWords, int k) {
+		return search(queryWords, false, k, false);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords, int k) {
+		return search(queryWords, true, k, false);
+	}
+
+	@Override
+	public ArrayList<SearchResult> rankedSearch(List<String> queryWords, boolean exact, int k) {
+		return search(queryWords, exact, k, true);
+	}
+
+	/**
+	 * Runs a boolean query by searching each of its words on its own, see
+	 * {@link BooleanQuery#evaluate(SearchableIndex, boolean, boolean, int)}.
+	 */
+	@Override
+	public ArrayList<SearchResult> search(BooleanQuery query, boolean exact, boolean ranked, int k) {
+		return query.evaluate(this, exact, ranked, k);
+	}
+
+	/**
+	 * Returns 0, as a mapped index file never changes.
+	 */
+	@Override
+	public long generation() {
+		return 0;
+	}
+
+	@Override
+	public Map<Integer, int[]> positions(String queryWord, boolean exact, BitSet documents) {
+		HashMap<Integer, int[]> positions = new HashMap<Integer, int[]>();
+		byte[] prefix = queryWord.getBytes(StandardCharsets.UTF_8);
+		Cursor cursor = new Cursor();
+		for (int term = ceiling(prefix, cursor); term < terms; term++) {
+			cursor.position = termOffset(term);
+			int length = cursor.varint();
+			if (!startsWith(cursor.position, length, prefix) || (exact && length != prefix.length)) {
+				break;
+			}
+			cursor.skip(length);
+
+			int count = cursor.varint();
+			cursor.varint();
+			int document = 0;
+			for (int i = 0; i < count; i++) {
+				document += cursor.varint();
+				int found = cursor.varint();
+				int position = cursor.varint();
+				int deltas = cursor.varint();
+				if (!documents.get(document)) {
+					cursor.skip(deltas);
+					continue;
+				}
+				int[] decoded = new int[found];
+				decoded[0] = position;
+				for (int p = 1; p < found; p++) {
+					position += cursor.varint();
+					decoded[p] = position;
+				}
+				BooleanQuery.addPositions(positions, document, decoded);
+			}
+			if (exact) {
+				break;
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Adds up the postings of every term equal to, or starting with, a query
+	 * word.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @return at most k sorted results
+	 */
+	private ArrayList<SearchResult> search(List<String> queryWords, boolean exact, int k,
+			boolean ranked) {
+		SearchTotals totals = new SearchTotals(ranked);
+		double averageLength = documents.averageLength();
+		int documentCount = Math.max(1, documents.liveCount());
+		Cursor cursor = new Cursor();
+
+		for (String query : queryWords) {
+			byte[] prefix = query.getBytes(StandardCharsets.UTF_8);
+			for (int term = ceiling(prefix, cursor); term < terms; term++) {
+				cursor.position = termOffset(term);
+				int length = cursor.varint();
+				if (!startsWith(cursor.position, length, prefix)
+						|| (exact && length != prefix.length)) {
+					break;
+				}
+				cursor.skip(length);
+
+				int count = cursor.varint();
+				cursor.varint();
+				double idf = ranked ? BM25.idf(count, documentCount) : 0;
+				int document = 0;
+				for (int i = 0; i < count; i++) {
+					document += cursor.varint();
+					int totalcount = cursor.varint();
+					int firstloc = cursor.varint();
+					cursor.skip(cursor.varint());
+
+					double score = ranked
+							? BM25.score(idf, totalcount, documents.getLength(document), averageLength)
+							: 0;
+					totals.add(document, totalcount, firstloc, score);
+				}
+				if (exact) {
+					break;
+				}
+			}
+		}
+		return SearchResult.top(documents, totals, k);
+	}
+
+	@Override
+	public void print(String outpath) {
+		Path opath = Paths.get(outpath).toAbsolutePath().normalize();
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(
+				opath, Charset.forName("UTF-8")));
+		) {
+			int[] pathorder = pathOrder();
+			Cursor cursor = new Cursor();
+			for (int term = 0; term < terms; term++) {
+				cursor.position = termOffset(term);
+				writer.print(cursor.string(cursor.varint()));
+
+				int count = cursor.varint();
+				cursor.varint();
+				long[] slots = new long[count];
+				long[] starts = new long[count];
+				int[] slotdocuments = new int[count];
+				int document = 0;
+				for (int i = 0; i < count; i++) {
+					document += cursor.varint();
+					slots[i] = ((long) pathorder[document] << 32) | i;
+					slotdocuments[i] = document;
+					starts[i] = cursor.position;
+					cursor.varint();
+					cursor.varint();
+					cursor.skip(cursor.varint());
+				}
+				Arrays.sort(slots);
+
+				for (long sorted : slots) {
+					int slot = (int) sorted;
+					document = slotdocuments[slot];
+					cursor.position = starts[slot];
+					int positions = cursor.varint();
+					int position = cursor.varint();
+					cursor.varint();
+
+					writer.print("\n" + "\"" + documents.getPath(document) + "\"");
+					writer.print(", " + position);
+					for (int p = 1; p < positions; p++) {
+						position += cursor.varint();
+						writer.print(", " + position);
+					}
+				}
+				writer.println();
+				writer.println();
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to write index to " + outpath);
+
+		}
+	}
+
+	/**
+	 * Finds the first term that is not smaller than a query.
+	 *
+	 * @param query
+	 *            - UTF-8 bytes of the query
+	 * @param cursor
+	 *            - cursor to read the file with
+	 * @return index of the term, or the number of terms if every term is
+	 *         smaller
+	 */
+	private int ceiling(byte[] query, Cursor cursor) {
+		int low = 0;
+		int high = terms;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			cursor.position = termOffset(middle);
+			int length = cursor.varint();
+			if (compare(cursor.position, length, query) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Compares a term in the file with a query, byte by byte. Cleaned words
+	 * only hold ASCII letters and digits, so this gives the same order as
+	 * comparing the words themselves.
+	 *
+	 * @param position
+	 *            - position of the term's bytes
+	 * @param length
+	 *            - length of the term in bytes
+	 * @param query
+	 *            - UTF-8 bytes of the query
+	 * @return negative, zero or positive as the term is smaller, equal or
+	 *         larger than the query
+	 */
+	private int compare(long position, int length, byte[] query) {
+		int shared = Math.min(length, query.length);
+		for (int i = 0; i < shared; i++) {
+			int difference = (get(position + i) & 0xFF) - (query[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - query.length;
+	}
+
+	/**
+	 * Tests if a term in the file starts with a prefix.
+	 *
+	 * @param position
+	 *            - position of the term's bytes
+	 * @param length
+	 *            - length of the term in bytes
+	 * @param prefix
+	 *            - UTF-8 bytes of the prefix
+	 * @return true if the term starts with the prefix
+	 */
+	private boolean startsWith(long position, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (get(position + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns where a term starts in the file.
+	 *
+	 * @param term
+	 *            - index of the term
+	 * @return position of the term
+	 */
+	private long termOffset(int term) {
+		return getLong(termTable + 8L * term);
+	}
+
+	/**
+	 * Ranks every document id by its path, so postings are printed in the
+	 * same order as {@link InvertedIndex#print(String)}.
+	 *
+	 * @return array mapping a document id to its rank
+	 */
+	private int[] pathOrder() {
+		Integer[] ids = new Integer[documents.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		Arrays.sort(ids, (a, b) -> documents.getPath(a).compareTo(documents.getPath(b)));
+
+		int[] order = new int[ids.length];
+		for (int rank = 0; rank < ids.length; rank++) {
+			order[ids[rank]] = rank;
+		}
+		return order;
+	}
+
+	/**
+	 * Returns one byte of the file.
+	 *
+	 * @param position
+	 *            - position in the file
+	 * @return byte at that position
+	 */
+	private byte get(long position) {
+		return regions[(int) (position >>> REGION_BITS)].get((int) (position & REGION_MASK));
+	}
+
+	/**
+	 * Returns a big-endian long stored in the file.
+	 *
+	 * @param position
+	 *            - position of the first byte
+	 * @return long at that position
+	 */
+	private long getLong(long position) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (get(position + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads varints and strings from the mapped file. Each search uses its
+	 * own cursor, so searches can run on several threads at once.
+	 */
+	private class Cursor {
+
+		private long position;
+
+		/**
+		 * Reads a varint and moves past it.
+		 *
+		 * @return value
+		 */
+		public int varint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = get(position++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		/**
+		 * Moves past bytes that are not needed.
+		 *
+		 * @param bytes
+		 *            - number of bytes to skip
+		 */
+		public void skip(int bytes) {
+			position += bytes;
+		}
+
+		/**
+		 * Reads a UTF-8 string and moves past it.
+		 *
+		 * @param length
+		 *            - length in bytes
+		 * @return string
+		 */
+		public String string(int length) {
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = get(position++);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -23,16 +24,125 @@ public class MultiQueryParser {
 
 	/** Maps query line to the search results for that line. */
 	private final LinkedHashMap<String, ArrayList<SearchResult>> resultmap;
-	private final WorkQueue workers;
-	private final MultiReaderLock lock;
-	private int pending;
+	private final WorkExecutor workers;
+	private final IndexLock lock;
 	private static final Logger logger = LogManager.getLogger();
 
+	/** Whether query words must match whole words instead of prefixes. */
+	private volatile boolean exact;
+
+	/** Largest number of results kept for each query line. */
+	private volatile int limit = Integer.MAX_VALUE;
+
+	/** Whether results are ranked by relevance instead of total count. */
+	private volatile boolean ranked;
+
+	/** Whether lines with operators or phrases are run as boolean queries. */
+	private volatile boolean operators;
+
+	/** Results of recent query lines, cleared when the settings change. */
+	private final QueryCache cache;
+
 	public MultiQueryParser(int threads) {
+		this(threads, new MultiReaderLock());
+	}
+
+	/**
+	 * Creates a MultiQueryParser whose result map is guarded by the given lock.
+	 * 
+	 * @param threads
+	 *            - number of search threads
+	 * @param lock
+	 *            - lock guarding the result map
+	 */
+	public MultiQueryParser(int threads, IndexLock lock) {
+		this(new WorkQueue(threads), lock);
+	}
+
+	/**
+	 * Creates a MultiQueryParser that searches on the given executor.
+	 * 
+	 * @param workers
+	 *            - executor that runs the searches
+	 * @param lock
+	 *            - lock guarding the result map
+	 */
+	public MultiQueryParser(WorkExecutor workers, IndexLock lock) {
 		this.resultmap = new LinkedHashMap<>();
-		this.workers = new WorkQueue(threads);
-		this.lock = new MultiReaderLock();
-		this.pending = 0;
+		this.workers = workers;
+		this.lock = lock;
+		this.cache = new QueryCache();
+	}
+
+	/**
+	 * Sets whether query words must match whole words in the index, or any
+	 * word they are a prefix of, which is the default.
+	 * 
+	 * @param exact
+	 *            - true for exact search, false for partial search
+	 */
+	public void setExact(boolean exact) {
+		this.exact = exact;
+		cache.clear();
+	}
+
+	/**
+	 * Caps the number of results kept for each query line. Only the best
+	 * results are kept, picked without sorting every matching document.
+	 * 
+	 * @param limit
+	 *            - largest number of results per query line
+	 */
+	public void setLimit(int limit) {
+		this.limit = Math.max(0, limit);
+		cache.clear();
+	}
+
+	/**
+	 * Sets whether results are ranked by {@link BM25} relevance, or by total
+	 * count, then first position, which is the default.
+	 * 
+	 * @param ranked
+	 *            - true to rank by relevance
+	 */
+	public void setRanked(boolean ranked) {
+		this.ranked = ranked;
+		cache.clear();
+	}
+
+	/**
+	 * Sets whether query lines holding the operators AND, OR, NOT or NEAR/k,
+	 * or a quoted phrase, are run as a {@link BooleanQuery}. Otherwise every
+	 * word of a line is searched as if joined by OR, which is the default.
+	 * 
+	 * @param operators
+	 *            - true to run boolean queries
+	 */
+	public void setOperators(boolean operators) {
+		this.operators = operators;
+		cache.clear();
+	}
+
+	/**
+	 * Sets how many query lines the result cache holds. A line searched again
+	 * in the same index reuses its cached results as long as the index has not
+	 * changed since.
+	 * 
+	 * @param entries
+	 *            - largest number of lines cached, 0 to turn the cache off
+	 */
+	public void setCacheSize(int entries) {
+		cache.setCapacity(entries);
+	}
+
+	/**
+	 * Returns the result cache, whose counters tell how often query lines
+	 * were answered without searching.
+	 * 
+	 * @return result cache
+	 */
+	public QueryCache getCache() {
+		return cache;
 	}
 
 	/**
@@ -48,8 +158,13 @@ public class MultiQueryParser {
 		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(
 				opath, Charset.forName("UTF-8")));) {
 			for (String queryword : resultmap.keySet()) {
+				ArrayList<SearchResult> results = resultmap.get(queryword);
+				if (results == null) {
+					// the search of this line was interrupted
+					continue;
+				}
 				writer.println(queryword);
-				for (SearchResult result : resultmap.get(queryword)) {
+				for (SearchResult result : results) {
 					writer.println(result.toString());
 				}
 				writer.println();
@@ -63,6 +178,10 @@ public class MultiQueryParser {
 	/**
 	 * Reads in query file, puts each line into the search result map and adds new work 
 	 * 
+	 * If the thread is interrupted while waiting for the result map, the rest
+	 * of the file is not searched. Searches interrupted the same way leave
+	 * their line out of the printed results.
+	 * 
 	 * </em> </p>
 	 * 
 	 * @param path
@@ -70,28 +189,44 @@ public class MultiQueryParser {
 	 * @return list of cleaned words
 	 * @throws IOException
 	 */
-	public void searchHelp(InvertedIndex index, Path querypath)
+	public void searchHelp(SearchableIndex index, Path querypath)
 			throws IOException {
 
+		HashSet<String> searched = new HashSet<String>();
 		try (BufferedReader reader = Files.newBufferedReader(querypath,
 				Charset.forName("UTF-8"))) {
 			String line;
 			while ((line = reader.readLine()) != null) {
-				line = FileParser.cleanText(line);
+				BooleanQuery query = operators ? BooleanQuery.parse(line) : null;
+				line = query != null ? query.toString() : FileParser.cleanText(line);
 				if (line.isEmpty()) {
 					continue;
 				}
-				logger.debug("Spawning new SearchWorker");
-				lock.lockWrite();
-				resultmap.put(line, null);
+				if (!searched.add(line)) {
+					// the results of the first copy of the line are used
+					cache.shared();
+					continue;
+				}
+				ArrayList<SearchResult> cached = cache.get(line, index, index.generation());
+				try {
+					lock.lockWriteInterruptibly();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					logger.debug("Interrupted, not searching the rest of {}", querypath);
+					break;
+				}
+				resultmap.put(line, cached);
 				lock.unlockWrite();
-				workers.execute(new SearchMinion(line, index));
+				if (cached == null) {
+					logger.debug("Spawning new SearchWorker");
+					workers.execute(new SearchMinion(line, query, index));
+				}
 
 			}
 
 		}
-		finish();
-		logger.debug("finishing work");
+		workers.finish();
+		logger.debug("finishing work, query cache {}", cache);
 	}
 
 	/**
@@ -107,65 +242,59 @@ public class MultiQueryParser {
 	public class SearchMinion implements Runnable {
 
 		private String line;
-		private InvertedIndex index;
+		private BooleanQuery query;
+		private SearchableIndex index;
 		
 		/**Constructor for SearchMinion, takes a line from the file and the master index
 		 * 
 		 * @param line
 		 * @param index
 		 */
-		public SearchMinion(String line, InvertedIndex index) {
+		public SearchMinion(String line, SearchableIndex index) {
+			this(line, null, index);
+		}
+
+		/**
+		 * Creates a SearchMinion for a line that may hold a boolean query.
+		 * 
+		 * @param line
+		 *            - cleaned query line, used as the key of its results
+		 * @param query
+		 *            - boolean query of the line, or null to search its words
+		 * @param index
+		 *            - index to search
+		 */
+		public SearchMinion(String line, BooleanQuery query, SearchableIndex index) {
 			this.line = line;
+			this.query = query;
 			this.index = index;
-			uppending();
 		}
 		/**
 		 * run method: Calls search and updates the result map with what is returned
 		 */
 		public void run() {
+			long generation = this.index.generation();
 			List<String> subword = (FileParser.parseText(this.line));
-			ArrayList<SearchResult> results = this.index.search(subword);
+			ArrayList<SearchResult> results;
+			if (query != null) {
+				results = this.index.search(query, exact, ranked, limit);
+			} else if (ranked) {
+				results = this.index.rankedSearch(subword, exact, limit);
+			} else {
+				results = exact ? this.index.exactSearch(subword, limit) : this.index.search(subword, limit);
+			}
+			cache.put(line, index, generation, results);
 			logger.debug("Updating ResultMap for: " + line);
-			lock.lockWrite();
-			resultmap.put(line, results);
-			lock.unlockWrite();
-			logger.debug("FINISHED search for: " + line);
-			downpending();
-		}
-	}
-
-	/**
-	 * Increments pending by 1
-	 */
-	private synchronized void uppending() {
-		this.pending++;
-		logger.debug("pending work " + pending);
-	}
-
-	/**
-	 * Decrements pending by 1, Notify threads if no work is pending
-	 */
-	private synchronized void downpending() {
-		this.pending--;
-		if (this.pending == 0) {
-			notifyAll();
-		}
-		logger.debug("pending is " + pending);
-	}
-
-	/**
-	 * Waits until there is no pending work left
-	 */
-	private synchronized void finish() {
-		while (pending > 0) {
 			try {
-				logger.debug("waiting...");
-				this.wait();
-				logger.debug("waiting over!!");
+				lock.lockWriteInterruptibly();
 			} catch (InterruptedException e) {
-				logger.debug("Unable to finish work", e);
+				Thread.currentThread().interrupt();
+				logger.debug("Interrupted, dropping results for: " + line);
+				return;
 			}
-
+			resultmap.put(line, results);
+			lock.unlockWrite();
+			logger.debug("FINISHED search for: " + line);
 		}
 	}
 
@@ -173,7 +302,6 @@ public class MultiQueryParser {
 	 * calls finish() then shuts down workers
 	 */
 	public void shutdown() {
-		finish();
 		workers.shutdown();
 		logger.debug("shutdown");
 	}
@@ -1,14 +1,19 @@
 /**
  * A simple custom lock that allows simultaneously read operations, but
  * disallows simultaneously write and read/write operations.
- * 
+ *
  * You do not need to implement any form or priority to read or write
  * operations. The first thread that acquires the appropriate lock should be
  * allowed to continue.
+ *
+ * Every unlock wakes all waiting threads, so under heavy contention prefer
+ * {@link WriterPreferringLock}, {@link PhaseFairLock} or
+ * {@link StampedIndexLock}.
  */
-public class MultiReaderLock {
+public class MultiReaderLock implements IndexLock {
 	private int readers;
 	private int writers;
+	private final LockCounters counters;
 
 	/**
 	 * Initializes a multi-reader (single-writer) lock.
@@ -16,28 +21,60 @@ public class MultiReaderLock {
 	public MultiReaderLock() {
 		readers = 0;
 		writers = 0;
+		counters = new LockCounters();
 	}
 
 	/**
 	 * Will wait until there are no active writers in the system, and then will
 	 * increase the number of active readers.
 	 */
+	@Override
 	public synchronized void lockRead() {
-		while (writers > 0) {
-			try {
-				this.wait();
-			} catch (InterruptedException e) {
-				System.out.println("Exception caught in lock read");
+		long waited = 0;
+		if (writers > 0) {
+			long start = System.nanoTime();
+			boolean interrupted = false;
+			while (writers > 0) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			waited = Math.max(1, System.nanoTime() - start);
+		}
+		readers++;
+		counters.read(waited);
+	}
 
+	/**
+	 * Like {@link #lockRead()}, but gives up if the thread is interrupted.
+	 */
+	@Override
+	public synchronized void lockReadInterruptibly() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		long waited = 0;
+		if (writers > 0) {
+			long start = System.nanoTime();
+			while (writers > 0) {
+				this.wait();
 			}
+			waited = Math.max(1, System.nanoTime() - start);
 		}
 		readers++;
+		counters.read(waited);
 	}
 
 	/**
 	 * Will decrease the number of active readers, and notify any waiting
 	 * threads if necessary.
 	 */
+	@Override
 	public synchronized void unlockRead() {
 		if (readers > 0) {
 			this.readers--;
@@ -52,26 +89,53 @@ public class MultiReaderLock {
 	 * Will wait until there are no active readers or writers in the system, and
 	 * then will increase the number of active writers.
 	 */
+	@Override
 	public synchronized void lockWrite() {
+		long waited = 0;
+		if (writers > 0 || readers > 0) {
+			long start = System.nanoTime();
+			boolean interrupted = false;
+			while (writers > 0 || readers > 0) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			waited = Math.max(1, System.nanoTime() - start);
+		}
+		this.writers++;
+		counters.write(waited);
+	}
 
-		while (writers > 0 || readers > 0) {
-			try {
+	/**
+	 * Like {@link #lockWrite()}, but gives up if the thread is interrupted.
+	 */
+	@Override
+	public synchronized void lockWriteInterruptibly() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		long waited = 0;
+		if (writers > 0 || readers > 0) {
+			long start = System.nanoTime();
+			while (writers > 0 || readers > 0) {
 				this.wait();
-
-			} catch (InterruptedException e) {
-				System.out.println("Exception caught in lock read");
-
 			}
-
+			waited = Math.max(1, System.nanoTime() - start);
 		}
 		this.writers++;
-
+		counters.write(waited);
 	}
 
 	/**
 	 * Will decrease the number of active writers, and notify any waiting
 	 * threads if necessary.
 	 */
+	@Override
 	public synchronized void unlockWrite() {
 		if (this.writers > 0) {
 			this.writers--;
@@ -79,4 +143,9 @@ public class MultiReaderLock {
 		}
 	}
 
-}
\ No newline at end of file
+	@Override
+	public LockCounters getCounters() {
+		return counters;
+	}
+
+}
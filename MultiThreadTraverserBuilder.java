@@ -4,6 +4,9 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 import org.apache.logging.log4j.LogManager;
@@ -14,27 +17,105 @@ import org.apache.logging.log4j.Logger;
  * passed in. Every .txt file it finds, it Parses the file, adding each word in
  * that file to the InvertedIndex.
  * 
+ * Each file is built into one of a fixed number of shard indexes, taken from
+ * a pool while the file is parsed, so files are added without waiting on the
+ * master index lock. The shards are combined into the master index with a
+ * single k-way merge once all files are parsed.
+ * 
  * @author Twye
  * 
  */
 public class MultiThreadTraverserBuilder {
 
-	private final WorkQueue workers;
-	private int pending;
+	private final WorkExecutor workers;
+	private final WorkExecutor listers;
 	private static final Logger logger = LogManager.getLogger();
 	private ArrayList<Path> paths;
-	private final MultiReaderLock lock;
+	private final IndexLock lock;
+	private int mergethreads;
+	private final int shardcount;
 
 	/**
-	 * Creates new Work Queue and pending work variable
+	 * Creates new Work Queue used for both listing directories and parsing
+	 * files
 	 * 
 	 * @param int threads
 	 */
 	public MultiThreadTraverserBuilder(int threads) {
+		this(new WorkQueue(threads), threads);
+	}
+
+	/**
+	 * Creates a builder that lists directories and parses files on the same
+	 * executor, building into at most the given number of shards.
+	 * 
+	 * @param workers
+	 *            - executor for all work
+	 * @param shards
+	 *            - largest number of shard indexes built at once
+	 */
+	private MultiThreadTraverserBuilder(WorkExecutor workers, int shards) {
+		this(workers, workers, shards);
+	}
+
+	/**
+	 * Creates a builder that lists directories and parses files on the same
+	 * executor.
+	 * 
+	 * @param workers
+	 *            - executor for all work
+	 */
+	public MultiThreadTraverserBuilder(WorkExecutor workers) {
+		this(workers, workers);
+	}
+
+	/**
+	 * Creates a builder that parses files on one executor and lists
+	 * directories on another, so CPU bound parsing can use a work-stealing
+	 * pool while I/O bound listing uses a thread per directory.
+	 * 
+	 * @param workers
+	 *            - executor that parses files
+	 * @param listers
+	 *            - executor that lists directories
+	 */
+	public MultiThreadTraverserBuilder(WorkExecutor workers, WorkExecutor listers) {
+		this(workers, listers, WorkQueue.DEFAULT);
+	}
+
+	/**
+	 * Creates a builder that parses files on one executor and lists
+	 * directories on another, building into at most the given number of
+	 * shards. The shard count bounds the memory of a build and the number of
+	 * indexes merged at the end, even on an executor that starts a thread per
+	 * file.
+	 * 
+	 * @param workers
+	 *            - executor that parses files
+	 * @param listers
+	 *            - executor that lists directories
+	 * @param shards
+	 *            - largest number of shard indexes built at once, usually
+	 *            the number of worker threads
+	 */
+	public MultiThreadTraverserBuilder(WorkExecutor workers, WorkExecutor listers, int shards) {
 		lock = new MultiReaderLock();
-		workers = new WorkQueue(threads);
+		this.workers = workers;
+		this.listers = listers;
 		paths = new ArrayList<Path>();
-		pending = 0;
+		mergethreads = 1;
+		shardcount = Math.max(1, shards);
+	}
+
+	/**
+	 * Sets how many threads merge the per-thread shards at the end of a
+	 * build. With more than one, each thread merges its own range of words.
+	 * 
+	 * @param threads
+	 *            - number of merge threads
+	 */
+	public void setMergeThreads(int threads) {
+		mergethreads = Math.max(1, threads);
 	}
 
 	/**
@@ -47,13 +128,12 @@ public class MultiThreadTraverserBuilder {
 	private class DirectoryMinion implements Runnable {
 
 		private Path directory;
-		private InvertedIndex wordI;
+		private Shards shards;
 
-		public DirectoryMinion(Path directory, InvertedIndex index) {
+		public DirectoryMinion(Path directory, Shards shards) {
 			this.directory = directory;
-			this.wordI = index;
+			this.shards = shards;
 			logger.debug("Created a directory worker for {}", directory);
-			uppending();
 		}
 
 		@Override
@@ -62,9 +142,9 @@ public class MultiThreadTraverserBuilder {
 				ArrayList<Path> singledir = new ArrayList<Path>();
 				for (Path path : Files.newDirectoryStream(directory)) {
 					if (Files.isDirectory(path)) {
-						workers.execute(new DirectoryMinion(path, this.wordI));
+						listers.execute(new DirectoryMinion(path, this.shards));
 					} else if (path.toString().toLowerCase().endsWith(".txt")) {
-						workers.execute(new BuilderMinion(path, this.wordI));
+						workers.execute(new BuilderMinion(path, this.shards));
 //						singledir.add(path);
 					}
 
@@ -78,7 +158,6 @@ public class MultiThreadTraverserBuilder {
 				System.out.println("Unable to traverse " + directory);
 				// e.printStackTrace();
 			}
-			downpending();
 		}
 	}
 
@@ -90,8 +169,9 @@ public class MultiThreadTraverserBuilder {
 	 * @param index
 	 */
 	public void addDirectory(Path directory, InvertedIndex index) {
+		Shards shards = new Shards(index, shardcount);
 		if (Files.isDirectory(directory)) {
-			workers.execute(new DirectoryMinion(directory, index));
+			listers.execute(new DirectoryMinion(directory, shards));
 		} else if (directory.toString().toLowerCase().endsWith(".txt")) {
 			System.out.println("Never gets here");
 			lock.lockWrite();
@@ -100,9 +180,144 @@ public class MultiThreadTraverserBuilder {
 		}
 
 		finish();
+		logger.debug("Merging {} shards", shards.all.size());
+		index.addAll(shards.all, mergethreads);
+		shards.clear();
 		logger.debug("Finishing directory work");
 	}
 
+	/**
+	 * Parses the given .txt files on the worker threads and adds their words
+	 * to the index. Used to re-parse only the files that changed since the
+	 * index was last built.
+	 * 
+	 * @param files
+	 *            - files to parse
+	 * @param index
+	 *            - index to add the words to
+	 * @return files that could not be read, whose words were not added
+	 */
+	public ArrayList<Path> addFiles(Collection<Path> files, InvertedIndex index) {
+		Shards shards = new Shards(index, shardcount);
+		for (Path file : files) {
+			workers.execute(new BuilderMinion(file, shards));
+		}
+
+		finish();
+		logger.debug("Merging {} shards", shards.all.size());
+		index.addAll(shards.all, mergethreads);
+		shards.clear();
+		return shards.failed;
+	}
+
+	/**
+	 * Parses the given .txt files on the worker threads and adds each file's
+	 * words to a segmented index as soon as it is parsed, so the index can be
+	 * searched while the files are added.
+	 * 
+	 * @param files
+	 *            - files to parse
+	 * @param index
+	 *            - index to add the words to
+	 */
+	public void addFiles(Collection<Path> files, SegmentedIndex index) {
+		for (Path file : files) {
+			workers.execute(new SegmentMinion(file, index));
+		}
+		finish();
+	}
+
+	/**
+	 * Pool of shard indexes that files are built into. A worker takes a shard
+	 * for the length of one file and gives it back, so no two files are built
+	 * into the same shard at once. At most a fixed number of shards is
+	 * created, and a worker waits for one to be given back once they are all
+	 * in use. All shards share the master index's {@link DocumentTable}, so
+	 * merging them needs no document id translation.
+	 */
+	private static class Shards {
+
+		private final InvertedIndex index;
+		private final int limit;
+		private final ArrayList<InvertedIndex> all;
+		private final BlockingQueue<InvertedIndex> idle;
+		private final ArrayList<Path> failed;
+
+		/**
+		 * Creates an empty set of shards for a master index.
+		 * 
+		 * @param index
+		 *            - master index the shards will be merged into
+		 * @param limit
+		 *            - largest number of shards to create
+		 */
+		public Shards(InvertedIndex index, int limit) {
+			this.index = index;
+			this.limit = limit;
+			this.all = new ArrayList<InvertedIndex>();
+			this.idle = new LinkedBlockingQueue<InvertedIndex>();
+			this.failed = new ArrayList<Path>();
+		}
+
+		/**
+		 * Takes a shard that no other worker is building into, creating one
+		 * if fewer than the limit exist, or waiting for one to be given back.
+		 * 
+		 * @return shard to build into
+		 * @throws InterruptedException
+		 *             if interrupted while waiting for a shard
+		 */
+		public InvertedIndex take() throws InterruptedException {
+			InvertedIndex shard = idle.poll();
+			if (shard != null) {
+				return shard;
+			}
+			synchronized (all) {
+				if (all.size() < limit) {
+					shard = new InvertedIndex(index.getDocuments());
+					all.add(shard);
+					return shard;
+				}
+			}
+			return idle.take();
+		}
+
+		/**
+		 * Gives a shard back so other workers can build into it.
+		 * 
+		 * @param shard
+		 *            - shard taken with {@link #take()}
+		 */
+		public void release(InvertedIndex shard) {
+			idle.add(shard);
+		}
+
+		/**
+		 * Records a file that could not be read.
+		 * 
+		 * @param file
+		 *            - file whose words were not added
+		 */
+		public void failed(Path file) {
+			synchronized (failed) {
+				failed.add(file);
+			}
+		}
+
+		/**
+		 * Empties and drops every shard once they are merged.
+		 */
+		public void clear() {
+			synchronized (all) {
+				for (InvertedIndex shard : all) {
+					shard.clear();
+				}
+				all.clear();
+			}
+			idle.clear();
+		}
+	}
+
 	/**
 	 * Index Helper, Parses .txt file line by line and calls InvertedIndex.add()
 	 * to add word from file to index
@@ -125,83 +340,99 @@ public class MultiThreadTraverserBuilder {
 //	}
 
 	/**
-	 * Increments pending by 1
-	 */
-	private synchronized void uppending() {
-		this.pending++;
-		logger.debug("pending work " + pending);
-	}
-
-	/**
-	 * Decrements pending by 1, Notify threads if no work is pending
+	 * Waits until every directory is listed and every file found is parsed.
+	 * Listing finishes first, since only listing adds more work.
 	 */
-	private synchronized void downpending() {
-		this.pending--;
-		if (this.pending == 0) {
-			notifyAll();
-		}
-		logger.debug("pending is" + pending);
-	}
-
-	/**
-	 * Waits until there is no pending work left
-	 */
-	private synchronized void finish() {
-		while (pending > 0) {
-			try {
-				logger.debug("waiting...");
-				this.wait();
-				logger.debug("waiting over!!");
-			} catch (InterruptedException e) {
-				logger.debug("Unable to finish work", e);
-			}
-
-		}
+	private void finish() {
+		listers.finish();
+		workers.finish();
 	}
 
 	/**
 	 * calls finish() then shuts down workers
 	 */
 	public void shutdown() {
-		finish();
+		listers.shutdown();
 		workers.shutdown();
 		logger.debug("shutdown");
 	}
 	
 	/**
-	 *Sub class for build index. Each Minion creates a index of their assigned file
-	 *Adds all file index's to master index passed in
+	 *Sub class for build index. Each Minion adds the words of their assigned file
+	 *to a shard taken from the pool
 	 *
 	 * 
 	 */
 	private class BuilderMinion implements Runnable {
 
 		private Path file;
-		private final InvertedIndex index;
-		private final InvertedIndex fileIndex;
+		private final Shards shards;
 
 		/**
-		 * BuilderMinion constructor takes a file to parse and the master index
+		 * BuilderMinion constructor takes a file to parse and the shards of
+		 * the master index
 		 * @param file
-		 * @param index
+		 * @param shards
 		 */
-		public BuilderMinion(Path file, InvertedIndex index) {
+		public BuilderMinion(Path file, Shards shards) {
 
 			this.file = file;
-			this.index = index;
-			this.fileIndex = new InvertedIndex();
-			uppending();
+			this.shards = shards;
 		}
 
 		/**
-		 * builder subclass run method, for each file creates a InvertedIndex, 
-		 * calls addAll to add each file index to master index.
+		 * builder subclass run method, takes a shard, adds the file's words
+		 * to it and gives it back.
 		 * 
 		 */
 		@Override
 		public void run() {
-			IndexBuilder.build(this.index, this.file);
-			downpending();
+			InvertedIndex shard;
+			try {
+				shard = this.shards.take();
+			} catch (InterruptedException e) {
+				this.shards.failed(this.file);
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				if (!IndexBuilder.build(shard, this.file)) {
+					this.shards.failed(this.file);
+				}
+			} finally {
+				this.shards.release(shard);
+			}
+		}
+	}
+
+	/**
+	 * Parses a single file and adds its words to a segmented index.
+	 */
+	private class SegmentMinion implements Runnable {
+
+		private final Path file;
+		private final SegmentedIndex index;
+
+		/**
+		 * Creates a worker for one file.
+		 * 
+		 * @param file
+		 *            - file to parse
+		 * @param index
+		 *            - index to add the words to
+		 */
+		public SegmentMinion(Path file, SegmentedIndex index) {
+			this.file = file;
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			try {
+				index.addAll(IndexBuilder.buildFile(index.getDocuments(), file));
+			} catch (IOException | NullPointerException e) {
+				System.out.println("Issue reading file");
+			}
 		}
 	}
 }
@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts work requests that were added but have not finished yet, so a thread
+ * can wait for all of them. Adding and finishing work only touches an atomic
+ * counter; the monitor is only used when the count drops to zero or someone
+ * waits for it to.
+ */
+public class PendingWork {
+
+	private final AtomicInteger pending;
+
+	/**
+	 * Creates a counter with no pending work.
+	 */
+	public PendingWork() {
+		pending = new AtomicInteger();
+	}
+
+	/**
+	 * Records that a work request was added.
+	 */
+	public void increment() {
+		pending.incrementAndGet();
+	}
+
+	/**
+	 * Records that a work request finished, waking up waiting threads if it
+	 * was the last one.
+	 */
+	public void decrement() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until there is no pending work left. A thread interrupted while
+	 * waiting keeps waiting, but its interrupt status is restored afterwards.
+	 */
+	public synchronized void await() {
+		boolean interrupted = false;
+		while (pending.get() > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of pending work requests.
+	 *
+	 * @return pending work
+	 */
+	public int get() {
+		return pending.get();
+	}
+}
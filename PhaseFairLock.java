@@ -0,0 +1,237 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fair {@link IndexLock} that alternates read and write phases. Writers get
+ * the lock one at a time in the order they asked for it. Readers that arrive
+ * while a writer holds or waits for the lock wait for that one writer only:
+ * when it unlocks, every reader waiting at that moment goes in before the next
+ * writer. Neither a steady stream of searches nor a steady stream of writes
+ * can starve the other side, and no thread waits behind more than one phase of
+ * the other kind.
+ */
+public class PhaseFairLock implements IndexLock {
+
+	private final ReentrantLock mutex;
+	private final Condition readable;
+	private final Condition writable;
+	private final LockCounters counters;
+
+	/** Writers waiting for the lock, in arrival order. */
+	private final ArrayDeque<Thread> writerQueue;
+	private int readers;
+	private boolean writing;
+	private int waitingReaders;
+
+	/** Readers let in by the last writer to unlock that have not gone in yet. */
+	private int admittedReaders;
+
+	/** Number of write phases that have ended. */
+	private long phase;
+
+	/**
+	 * Initializes an unlocked phase-fair lock.
+	 */
+	public PhaseFairLock() {
+		mutex = new ReentrantLock();
+		readable = mutex.newCondition();
+		writable = mutex.newCondition();
+		counters = new LockCounters();
+		writerQueue = new ArrayDeque<Thread>();
+		readers = 0;
+		writing = false;
+		waitingReaders = 0;
+		admittedReaders = 0;
+		phase = 0;
+	}
+
+	@Override
+	public void lockRead() {
+		mutex.lock();
+		try {
+			acquireRead(false);
+		} catch (InterruptedException e) {
+			// not thrown when waiting uninterruptibly
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockReadInterruptibly() throws InterruptedException {
+		mutex.lockInterruptibly();
+		try {
+			acquireRead(true);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlockRead() {
+		mutex.lock();
+		try {
+			if (readers > 0) {
+				readers--;
+				if (readers == 0 && admittedReaders == 0 && !writerQueue.isEmpty()) {
+					writable.signalAll();
+				}
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockWrite() {
+		mutex.lock();
+		try {
+			acquireWrite(false);
+		} catch (InterruptedException e) {
+			// not thrown when waiting uninterruptibly
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockWriteInterruptibly() throws InterruptedException {
+		mutex.lockInterruptibly();
+		try {
+			acquireWrite(true);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlockWrite() {
+		mutex.lock();
+		try {
+			if (writing) {
+				writing = false;
+				phase++;
+				admittedReaders = waitingReaders;
+				if (admittedReaders > 0) {
+					readable.signalAll();
+				} else if (!writerQueue.isEmpty()) {
+					writable.signalAll();
+				}
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public LockCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Waits until no writer holds the lock and either none is waiting or a
+	 * write phase ended since this reader arrived, then acquires the lock for
+	 * reading. Must be called while holding the mutex.
+	 *
+	 * @param interruptible
+	 *            - true to give up if the thread is interrupted
+	 * @throws InterruptedException
+	 *             if interruptible and the thread was interrupted while
+	 *             waiting, in which case the lock is not acquired
+	 */
+	private void acquireRead(boolean interruptible) throws InterruptedException {
+		long waited = 0;
+		if (writing || !writerQueue.isEmpty()) {
+			long start = System.nanoTime();
+			long arrived = phase;
+			waitingReaders++;
+			try {
+				while (writing || (!writerQueue.isEmpty() && phase == arrived)) {
+					if (interruptible) {
+						readable.await();
+					} else {
+						readable.awaitUninterruptibly();
+					}
+				}
+			} catch (InterruptedException e) {
+				waitingReaders--;
+				if (phase != arrived) {
+					readerEntered();
+				}
+				throw e;
+			}
+			waitingReaders--;
+			if (phase != arrived) {
+				readerEntered();
+			}
+			waited = Math.max(1, System.nanoTime() - start);
+		}
+		readers++;
+		counters.read(waited);
+	}
+
+	/**
+	 * Counts a reader let in by the last write phase as gone in, and wakes the
+	 * writers once all of them have. Must be called while holding the mutex.
+	 */
+	private void readerEntered() {
+		admittedReaders--;
+		if (admittedReaders == 0 && readers == 0 && !writerQueue.isEmpty()) {
+			writable.signalAll();
+		}
+	}
+
+	/**
+	 * Queues behind the writers already waiting, then waits until no reader
+	 * or writer holds the lock and every reader let in by the last write
+	 * phase has gone in, then acquires the lock for writing. Must be called
+	 * while holding the mutex.
+	 *
+	 * @param interruptible
+	 *            - true to give up if the thread is interrupted
+	 * @throws InterruptedException
+	 *             if interruptible and the thread was interrupted while
+	 *             waiting, in which case the lock is not acquired
+	 */
+	private void acquireWrite(boolean interruptible) throws InterruptedException {
+		Thread self = Thread.currentThread();
+		long waited = 0;
+		writerQueue.addLast(self);
+		if (!canWrite(self)) {
+			long start = System.nanoTime();
+			try {
+				while (!canWrite(self)) {
+					if (interruptible) {
+						writable.await();
+					} else {
+						writable.awaitUninterruptibly();
+					}
+				}
+			} catch (InterruptedException e) {
+				writerQueue.remove(self);
+				// the next writer may now be first, and readers held back
+				// only by this writer may go in
+				writable.signalAll();
+				readable.signalAll();
+				throw e;
+			}
+			waited = Math.max(1, System.nanoTime() - start);
+		}
+		writerQueue.removeFirst();
+		writing = true;
+		counters.write(waited);
+	}
+
+	/**
+	 * Tests if a queued writer may take the lock. Must be called while
+	 * holding the mutex.
+	 *
+	 * @param writer
+	 *            - thread of the writer
+	 * @return true if the writer is first in line and the lock is free
+	 */
+	private boolean canWrite(Thread writer) {
+		return !writing && readers == 0 && admittedReaders == 0 && writerQueue.peekFirst() == writer;
+	}
+}
@@ -0,0 +1,833 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Stores every position of a single word, grouped by the document it was found
+ * in, as one compressed byte array. Each document is stored as a block in
+ * ascending document order:
+ *
+ * <pre>
+ * block: varint document id delta, varint count, varint first position,
+ *        varint length of the rest, varint deltas of the other positions
+ * </pre>
+ *
+ * This is the same layout {@link IndexFileWriter} uses for postings, so a
+ * posting list is written to and loaded from an index file with a single
+ * copy. Document ids and positions both grow, so most values fit in one or
+ * two bytes instead of the four an int takes, and the count and first
+ * position of every document are read without decoding its other positions.
+ *
+ * Blocks are read with a {@link Cursor}. Adding to the last document, or
+ * adding a new last document, only appends; adding to an earlier document
+ * splices its block into the array.
+ *
+ * Every {@link #SKIP_INTERVAL}th block is also recorded in a skip table, with
+ * its document id, where it starts and the id before it, so a cursor can jump
+ * ahead to a document without decoding every block on the way. Lists with
+ * fewer blocks have no skip table.
+ */
+public class PostingList {
+
+	/** Number of bytes a new posting list has room for. */
+	private static final int INITIAL_BYTES = 16;
+
+	/** Empty array of deltas, used when adding a single position. */
+	private static final byte[] NO_DELTAS = new byte[0];
+
+	/** Number of blocks between two entries of the skip table. */
+	public static final int SKIP_INTERVAL = 32;
+
+	/** Blocks of every document, only the first {@link #length} are used. */
+	private byte[] data;
+
+	/** Number of bytes in use. */
+	private int length;
+
+	/** Number of documents. */
+	private int size;
+
+	/** Number of positions across all documents. */
+	private int positions;
+
+	/** Start of the last document's block. */
+	private int lastStart;
+
+	/** Id of the document before the last one, or 0. */
+	private int previousDocument;
+
+	/** Id of the last document. */
+	private int lastDocument;
+
+	/** Number of positions of the last document. */
+	private int lastCount;
+
+	/** First position of the last document. */
+	private int lastFirst;
+
+	/** Number of delta bytes of the last document. */
+	private int lastRest;
+
+	/** Last position of the last document. */
+	private int lastPosition;
+
+	/**
+	 * Document id, block start and previous document id of every
+	 * {@link #SKIP_INTERVAL}th block, or null if there are none.
+	 */
+	private int[] skips;
+
+	/** Number of entries in the skip table. */
+	private int skipCount;
+
+	/**
+	 * Creates an empty posting list.
+	 */
+	public PostingList() {
+		this(1, 0);
+	}
+
+	/**
+	 * Creates an empty posting list with room for about the given number of
+	 * documents and positions.
+	 *
+	 * @param documents
+	 *            - expected number of documents
+	 * @param positions
+	 *            - expected number of positions
+	 */
+	public PostingList(int documents, int positions) {
+		this.data = new byte[Math.max(INITIAL_BYTES, 4 * documents + positions)];
+		this.length = 0;
+		this.size = 0;
+		this.positions = 0;
+	}
+
+	/**
+	 * Adds a position for a document, creating the document block if needed.
+	 *
+	 * @param document
+	 *            - id of the document the word was found in
+	 * @param position
+	 *            - position of the word in that document
+	 */
+	public void add(int document, int position) {
+		addBlock(document, 1, position, position, NO_DELTAS, 0, 0);
+	}
+
+	/**
+	 * Adds every position of another posting list to this one. Document ids of
+	 * the other list are translated through the passed map first.
+	 *
+	 * @param other
+	 *            - posting list to copy positions from
+	 * @param documentMap
+	 *            - maps the other list's document ids to ids in this list, or
+	 *            null if both lists use the same ids
+	 */
+	public void addAll(PostingList other, int[] documentMap) {
+		Cursor cursor = other.cursor();
+		while (cursor.next()) {
+			int document = cursor.document();
+			cursor.copyTo(this, documentMap == null ? document : documentMap[document]);
+		}
+	}
+
+	/**
+	 * Adds postings encoded as {@link IndexFileWriter} writes them. If this
+	 * list is empty and the ids are kept, the bytes are copied as they are.
+	 *
+	 * @param bytes
+	 *            - array holding the encoded postings
+	 * @param offset
+	 *            - index of the first byte
+	 * @param length
+	 *            - number of bytes
+	 * @param documentMap
+	 *            - maps stored document ids to ids in this list, or null to
+	 *            keep them
+	 */
+	public void addEncoded(byte[] bytes, int offset, int length, int[] documentMap) {
+		Cursor cursor = new Cursor(bytes, offset, offset + length, null, 0);
+		if (size > 0 || documentMap != null) {
+			while (cursor.next()) {
+				int document = cursor.document();
+				cursor.copyTo(this, documentMap == null ? document : documentMap[document]);
+			}
+			return;
+		}
+
+		ensure(length);
+		System.arraycopy(bytes, offset, data, 0, length);
+		this.length = length;
+		while (cursor.next()) {
+			previousDocument = lastDocument;
+			lastStart = cursor.start - offset;
+			if (size > 0 && size % SKIP_INTERVAL == 0) {
+				addSkip(cursor.document, lastStart, previousDocument);
+			}
+			lastDocument = cursor.document;
+			lastCount = cursor.count;
+			lastFirst = cursor.first;
+			lastRest = cursor.deltaLength;
+			positions += cursor.count;
+			size++;
+		}
+		if (size > 0) {
+			lastPosition = cursor.last();
+		}
+	}
+
+	/**
+	 * Merges several posting lists into a new one in a single pass over their
+	 * sorted document ids. If a document is in more than one list, its
+	 * positions are kept in the order the lists are passed in.
+	 *
+	 * @param lists
+	 *            - posting lists to merge, all using the same document ids
+	 * @param count
+	 *            - number of lists to use from the array
+	 * @return merged posting list
+	 */
+	public static PostingList merge(PostingList[] lists, int count) {
+		int bytes = 0;
+		Cursor[] cursors = new Cursor[count];
+		boolean[] more = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			bytes += lists[i].length;
+			cursors[i] = lists[i].cursor();
+			more[i] = cursors[i].next();
+		}
+
+		PostingList merged = new PostingList(0, bytes);
+		while (true) {
+			int document = Integer.MAX_VALUE;
+			boolean found = false;
+			for (int i = 0; i < count; i++) {
+				if (more[i] && cursors[i].document <= document) {
+					document = cursors[i].document;
+					found = true;
+				}
+			}
+			if (!found) {
+				break;
+			}
+
+			for (int i = 0; i < count; i++) {
+				if (more[i] && cursors[i].document == document) {
+					cursors[i].copyTo(merged, document);
+					more[i] = cursors[i].next();
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Removes every position of the given documents.
+	 *
+	 * @param removed
+	 *            - ids of the documents to remove
+	 * @return true if any document was removed
+	 */
+	public boolean removeAll(BitSet removed) {
+		PostingList kept = new PostingList(0, length);
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			if (!removed.get(cursor.document)) {
+				cursor.copyTo(kept, cursor.document);
+			}
+		}
+		if (kept.size == size) {
+			return false;
+		}
+
+		data = kept.data;
+		length = kept.length;
+		size = kept.size;
+		positions = kept.positions;
+		lastStart = kept.lastStart;
+		previousDocument = kept.previousDocument;
+		lastDocument = kept.lastDocument;
+		lastCount = kept.lastCount;
+		lastFirst = kept.lastFirst;
+		lastRest = kept.lastRest;
+		lastPosition = kept.lastPosition;
+		skips = kept.skips;
+		skipCount = kept.skipCount;
+		return true;
+	}
+
+	/**
+	 * Estimates the heap used by this posting list, including unused room in
+	 * its array.
+	 *
+	 * @return approximate size in bytes
+	 */
+	public long estimateBytes() {
+		return 72 + 16 + data.length + (skips == null ? 0 : 16 + 4 * skips.length);
+	}
+
+	/**
+	 * Returns the number of documents in this posting list.
+	 *
+	 * @return number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of positions across all documents.
+	 *
+	 * @return number of positions
+	 */
+	public int positions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the number of bytes of the encoded postings.
+	 *
+	 * @return number of bytes
+	 */
+	public int encodedLength() {
+		return length;
+	}
+
+	/**
+	 * Copies the encoded postings, laid out as {@link IndexFileWriter} writes
+	 * them.
+	 *
+	 * @param dest
+	 *            - array to copy to, with room for {@link #encodedLength()}
+	 *            bytes
+	 * @param offset
+	 *            - index in the array to copy to
+	 */
+	public void copyEncoded(byte[] dest, int offset) {
+		System.arraycopy(data, 0, dest, offset, length);
+	}
+
+	/**
+	 * Returns a cursor positioned before the first document. The list must
+	 * not be changed while the cursor is used.
+	 *
+	 * @return cursor over the documents of this list
+	 */
+	public Cursor cursor() {
+		return new Cursor(data, 0, length, skips, skipCount);
+	}
+
+	/**
+	 * Adds the positions of a document given as a count, first and last
+	 * position, and encoded deltas between them. If the document is already
+	 * in the list, the positions are added after its existing ones.
+	 *
+	 * @param document
+	 *            - id of the document
+	 * @param count
+	 *            - number of positions
+	 * @param first
+	 *            - first position
+	 * @param last
+	 *            - last position
+	 * @param deltas
+	 *            - array holding the varint deltas of the other positions
+	 * @param offset
+	 *            - index of the first delta byte
+	 * @param rest
+	 *            - number of delta bytes
+	 */
+	private void addBlock(int document, int count, int first, int last, byte[] deltas, int offset,
+			int rest) {
+		if (size > 0 && document == lastDocument) {
+			int gap = first - lastPosition;
+			int added = varintSize(gap) + rest;
+			int oldHeader = lastHeaderSize();
+			lastCount += count;
+			lastRest += added;
+			int newHeader = lastHeaderSize();
+
+			ensure(length + newHeader - oldHeader + added);
+			if (newHeader != oldHeader) {
+				System.arraycopy(data, lastStart + oldHeader, data, lastStart + newHeader,
+						length - lastStart - oldHeader);
+				length += newHeader - oldHeader;
+			}
+			writeLastHeader();
+			length = putVarint(data, length, gap);
+			System.arraycopy(deltas, offset, data, length, rest);
+			length += rest;
+			lastPosition = last;
+		} else if (size == 0 || document > lastDocument) {
+			previousDocument = size == 0 ? 0 : lastDocument;
+			lastStart = length;
+			lastDocument = document;
+			lastCount = count;
+			lastFirst = first;
+			lastRest = rest;
+			lastPosition = last;
+
+			ensure(length + lastHeaderSize() + rest);
+			writeLastHeader();
+			System.arraycopy(deltas, offset, data, length, rest);
+			length += rest;
+			if (size > 0 && size % SKIP_INTERVAL == 0) {
+				addSkip(document, lastStart, previousDocument);
+			}
+			size++;
+		} else {
+			insertBlock(document, count, first, deltas, offset, rest);
+		}
+		positions += count;
+	}
+
+	/**
+	 * Adds the positions of a document before the last one, splicing its
+	 * block into the array. Slower than adding to the end, since every later
+	 * block has to move. The block is found from the nearest skip entry, and
+	 * only the skip entries after it are updated.
+	 *
+	 * @param document
+	 *            - id of the document, less than the last document
+	 * @param count
+	 *            - number of positions
+	 * @param first
+	 *            - first position
+	 * @param deltas
+	 *            - array holding the varint deltas of the other positions
+	 * @param offset
+	 *            - index of the first delta byte
+	 * @param rest
+	 *            - number of delta bytes
+	 */
+	private void insertBlock(int document, int count, int first, byte[] deltas, int offset, int rest) {
+		int entry = lastSkipBefore(document);
+		Cursor cursor = new Cursor(data, entry < 0 ? 0 : skips[3 * entry + 1], length, null, 0);
+		int previous = entry < 0 ? 0 : skips[3 * entry + 2];
+		int index = entry < 0 ? 0 : SKIP_INTERVAL * (entry + 1);
+		cursor.document = previous;
+		while (cursor.next() && cursor.document < document) {
+			previous = cursor.document;
+			index++;
+		}
+
+		byte[] block;
+		int used;
+		int from = cursor.start;
+		int to;
+		int moved;
+		boolean added = cursor.document != document;
+		if (!added) {
+			int gap = first - cursor.last();
+			int total = cursor.deltaLength + varintSize(gap) + rest;
+			block = new byte[20 + total];
+			used = putHeader(block, 0, document - previous, cursor.count + count, cursor.first, total);
+			System.arraycopy(data, cursor.deltaStart, block, used, cursor.deltaLength);
+			used = putVarint(block, used + cursor.deltaLength, gap);
+			System.arraycopy(deltas, offset, block, used, rest);
+			used += rest;
+			to = cursor.next;
+			moved = used - (to - from);
+		} else {
+			// The new block goes in front of the cursor's block, whose id
+			// delta is now relative to the new document.
+			block = new byte[25 + rest];
+			used = putHeader(block, 0, document - previous, count, first, rest);
+			System.arraycopy(deltas, offset, block, used, rest);
+			int header = used + rest;
+			used = putVarint(block, header, cursor.document - document);
+			to = cursor.start + varintSize(cursor.document - previous);
+			if (cursor.start == lastStart) {
+				previousDocument = document;
+				moved = header;
+			} else {
+				moved = used - (to - from);
+			}
+			size++;
+		}
+
+		ensure(length + used - (to - from));
+		System.arraycopy(data, to, data, from + used, length - to);
+		System.arraycopy(block, 0, data, from, used);
+		length += used - (to - from);
+		lastStart += moved;
+
+		if (!added) {
+			// Later blocks only moved in the array.
+			for (int i = 0; i < skipCount; i++) {
+				if (skips[3 * i + 1] > from) {
+					skips[3 * i + 1] += used - (to - from);
+				}
+			}
+			return;
+		}
+
+		// Blocks from the new one on are now one index later, so their skip
+		// entries are recorded again. Entries before it stay as they are.
+		skipCount = Math.min(skipCount, index == 0 ? 0 : (index - 1) / SKIP_INTERVAL);
+		Cursor blocks = new Cursor(data, from, length, null, 0);
+		blocks.document = previous;
+		for (int before = previous; blocks.next(); index++) {
+			if (index > 0 && index % SKIP_INTERVAL == 0) {
+				addSkip(blocks.document, blocks.start, before);
+			}
+			before = blocks.document;
+		}
+	}
+
+	/**
+	 * Finds the last skip entry of a document before the given one.
+	 *
+	 * @param document
+	 *            - document id
+	 * @return index of the entry, or -1 if there is none
+	 */
+	private int lastSkipBefore(int document) {
+		int low = -1;
+		int high = skipCount;
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (skips[3 * middle] < document) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Adds an entry to the skip table.
+	 *
+	 * @param document
+	 *            - id of the document of the block
+	 * @param start
+	 *            - index of the block in {@link #data}
+	 * @param previous
+	 *            - id of the document before it
+	 */
+	private void addSkip(int document, int start, int previous) {
+		if (skips == null) {
+			skips = new int[3 * 4];
+		} else if (3 * skipCount == skips.length) {
+			skips = Arrays.copyOf(skips, skips.length * 2);
+		}
+		skips[3 * skipCount] = document;
+		skips[3 * skipCount + 1] = start;
+		skips[3 * skipCount + 2] = previous;
+		skipCount++;
+	}
+
+	/**
+	 * Returns the size of the last document's header.
+	 *
+	 * @return number of bytes
+	 */
+	private int lastHeaderSize() {
+		return varintSize(lastDocument - previousDocument) + varintSize(lastCount)
+				+ varintSize(lastFirst) + varintSize(lastRest);
+	}
+
+	/**
+	 * Writes the last document's header at {@link #lastStart} and moves
+	 * {@link #length} past it if it was at the header.
+	 */
+	private void writeLastHeader() {
+		int end = putHeader(data, lastStart, lastDocument - previousDocument, lastCount, lastFirst,
+				lastRest);
+		if (length < end) {
+			length = end;
+		}
+	}
+
+	/**
+	 * Makes sure {@link #data} can hold a number of bytes.
+	 *
+	 * @param bytes
+	 *            - number of bytes needed
+	 */
+	private void ensure(int bytes) {
+		if (bytes > data.length) {
+			data = Arrays.copyOf(data, Math.max(bytes, data.length + (data.length >> 1)));
+		}
+	}
+
+	/**
+	 * Writes a block header.
+	 *
+	 * @param bytes
+	 *            - array to write to
+	 * @param index
+	 *            - index of the first byte
+	 * @param delta
+	 *            - difference to the previous document id
+	 * @param count
+	 *            - number of positions
+	 * @param first
+	 *            - first position
+	 * @param rest
+	 *            - number of delta bytes after the header
+	 * @return index after the header
+	 */
+	private static int putHeader(byte[] bytes, int index, int delta, int count, int first, int rest) {
+		index = putVarint(bytes, index, delta);
+		index = putVarint(bytes, index, count);
+		index = putVarint(bytes, index, first);
+		return putVarint(bytes, index, rest);
+	}
+
+	/**
+	 * Writes a varint.
+	 *
+	 * @param bytes
+	 *            - array to write to
+	 * @param index
+	 *            - index of the first byte
+	 * @param value
+	 *            - value, treated as unsigned
+	 * @return index after the varint
+	 */
+	private static int putVarint(byte[] bytes, int index, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[index++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[index++] = (byte) value;
+		return index;
+	}
+
+	/**
+	 * Returns the number of bytes a value takes as a varint.
+	 *
+	 * @param value
+	 *            - value, treated as unsigned
+	 * @return size in bytes, between 1 and 5
+	 */
+	private static int varintSize(int value) {
+		return IndexFileWriter.varintSize(value);
+	}
+
+	/**
+	 * Walks the documents of a posting list in ascending order. Reading a
+	 * document's count and first position does not decode its other
+	 * positions. {@link #advance(int)} skips ahead to a document using the
+	 * list's skip table.
+	 */
+	public static class Cursor {
+
+		private final byte[] data;
+		private final int end;
+		private final int[] skips;
+		private final int skipCount;
+		private int skip;
+		private boolean positioned;
+		private int next;
+		private int start;
+		private int document;
+		private int count;
+		private int first;
+		private int deltaStart;
+		private int deltaLength;
+
+		/**
+		 * Creates a cursor positioned before the first block.
+		 *
+		 * @param data
+		 *            - encoded blocks
+		 * @param offset
+		 *            - index of the first block
+		 * @param end
+		 *            - index after the last block
+		 * @param skips
+		 *            - skip table of the blocks, or null
+		 * @param skipCount
+		 *            - number of entries in the skip table
+		 */
+		private Cursor(byte[] data, int offset, int end, int[] skips, int skipCount) {
+			this.data = data;
+			this.end = end;
+			this.next = offset;
+			this.skips = skips;
+			this.skipCount = skipCount;
+			this.skip = -1;
+		}
+
+		/**
+		 * Moves to the first document whose id is at least the target, or
+		 * stays on the current document if it already is. The skip table is
+		 * searched by galloping from the last entry used, so a series of
+		 * advances costs about the log of the distance jumped each time.
+		 *
+		 * @param target
+		 *            - smallest document id wanted
+		 * @return false if there is no such document
+		 */
+		public boolean advance(int target) {
+			if (positioned && document >= target) {
+				return true;
+			}
+			if (skipCount > 0 && skip + 1 < skipCount && skips[3 * (skip + 1)] <= target) {
+				int low = skip + 1;
+				int step = 1;
+				while (low + step < skipCount && skips[3 * (low + step)] <= target) {
+					low += step;
+					step <<= 1;
+				}
+				int high = Math.min(low + step, skipCount);
+				while (high - low > 1) {
+					int middle = (low + high) >>> 1;
+					if (skips[3 * middle] <= target) {
+						low = middle;
+					} else {
+						high = middle;
+					}
+				}
+				skip = low;
+				if (skips[3 * low + 1] >= next) {
+					next = skips[3 * low + 1];
+					document = skips[3 * low + 2];
+				}
+			}
+			while (next()) {
+				if (document >= target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Moves to the next document.
+		 *
+		 * @return false if there are no documents left
+		 */
+		public boolean next() {
+			if (next >= end) {
+				positioned = false;
+				return false;
+			}
+			start = next;
+			document += varint();
+			count = varint();
+			first = varint();
+			deltaLength = varint();
+			if (deltaLength < 0) {
+				// Only possible if the list changed under an optimistic read.
+				throw new IllegalStateException("Posting list changed while reading");
+			}
+			deltaStart = next;
+			next += deltaLength;
+			positioned = true;
+			return true;
+		}
+
+		/**
+		 * Returns the id of the current document.
+		 *
+		 * @return document id
+		 */
+		public int document() {
+			return document;
+		}
+
+		/**
+		 * Returns how many times the word was found in the current document.
+		 *
+		 * @return number of positions
+		 */
+		public int count() {
+			return count;
+		}
+
+		/**
+		 * Returns the first position of the word in the current document.
+		 *
+		 * @return first position
+		 */
+		public int first() {
+			return first;
+		}
+
+		/**
+		 * Decodes every position of the word in the current document.
+		 *
+		 * @param buffer
+		 *            - array to decode into, or null
+		 * @return the buffer, or a larger array if it did not have room for
+		 *         {@link #count()} positions
+		 */
+		public int[] positions(int[] buffer) {
+			if (buffer == null || buffer.length < count) {
+				buffer = new int[Math.max(count, buffer == null ? 0 : buffer.length * 2)];
+			}
+			int position = first;
+			buffer[0] = position;
+			int cursor = deltaStart;
+			for (int i = 1; i < count; i++) {
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = data[cursor++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				position += value;
+				buffer[i] = position;
+			}
+			return buffer;
+		}
+
+		/**
+		 * Returns the last position of the word in the current document.
+		 *
+		 * @return last position
+		 */
+		private int last() {
+			int position = first;
+			int value = 0;
+			int shift = 0;
+			for (int cursor = deltaStart; cursor < deltaStart + deltaLength; cursor++) {
+				byte b = data[cursor];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+				if (b >= 0) {
+					position += value;
+					value = 0;
+					shift = 0;
+				}
+			}
+			return position;
+		}
+
+		/**
+		 * Adds the positions of the current document to another list.
+		 *
+		 * @param list
+		 *            - list to add to
+		 * @param id
+		 *            - document id to add the positions under
+		 */
+		private void copyTo(PostingList list, int id) {
+			list.addBlock(id, count, first, count == 1 ? first : last(), data, deltaStart, deltaLength);
+		}
+
+		/**
+		 * Reads a varint at {@link #next}.
+		 *
+		 * @return value
+		 */
+		private int varint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[next++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+	}
+}
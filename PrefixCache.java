@@ -0,0 +1,114 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the aggregated postings of recently searched prefixes that match
+ * many words, so a query holding one of them again reads one aggregate
+ * instead of walking the postings of every matching word. Unlike a
+ * {@link PrefixIndex}, which aggregates every prefix up to a fixed length
+ * up front, only prefixes that are actually searched are aggregated, whatever
+ * their length, and at most a fixed number of them are kept, forgetting the
+ * least recently used one to make room.
+ *
+ * Like a prefix index, a prefix cache is a snapshot of the words it was
+ * filled from. The index drops it whenever its words change.
+ */
+public class PrefixCache {
+
+	/** Number of prefixes kept by default. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** Fewest matching words for a prefix to be worth aggregating. */
+	public static final int MIN_WORDS = 32;
+
+	private final LinkedHashMap<String, PrefixIndex.Aggregate> aggregates;
+	private final int capacity;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity
+	 *            - largest number of prefixes kept
+	 */
+	public PrefixCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.aggregates = new LinkedHashMap<String, PrefixIndex.Aggregate>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PrefixIndex.Aggregate> eldest) {
+				return size() > PrefixCache.this.capacity;
+			}
+		};
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the cached aggregate of a prefix.
+	 *
+	 * @param prefix
+	 *            - cleaned query word
+	 * @return aggregate of every word starting with the prefix, or null if
+	 *         it is not cached
+	 */
+	public synchronized PrefixIndex.Aggregate get(String prefix) {
+		PrefixIndex.Aggregate aggregate = aggregates.get(prefix);
+		if (aggregate == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Caches the aggregate of a prefix.
+	 *
+	 * @param prefix
+	 *            - cleaned query word
+	 * @param aggregate
+	 *            - aggregate of every word starting with the prefix
+	 */
+	public synchronized void put(String prefix, PrefixIndex.Aggregate aggregate) {
+		aggregates.put(prefix, aggregate);
+	}
+
+	/**
+	 * Returns the number of prefixes cached.
+	 *
+	 * @return number of prefixes
+	 */
+	public synchronized int size() {
+		return aggregates.size();
+	}
+
+	/**
+	 * Returns how many lookups found a cached aggregate.
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns how many lookups found no cached aggregate, including those of
+	 * prefixes matching too few words to be cached.
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits: %d, misses: %d, prefixes: %d", getHits(), getMisses(), size());
+	}
+}
@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Precomputed search results for every short prefix of the words in an
+ * index. For each prefix up to a maximum length, stores every document any
+ * matching word is found in, with the total count and earliest position over
+ * all those words. A search for a short prefix then reads one aggregate
+ * instead of walking the postings of every matching word, which for a one
+ * letter prefix can be thousands of words.
+ *
+ * A prefix index is a snapshot. It has to be rebuilt after the words it was
+ * built from change, see {@link InvertedIndex#setPrefixLength(int)}.
+ */
+public class PrefixIndex {
+
+	private final int maxLength;
+	private final HashMap<String, Aggregate> aggregates;
+
+	/**
+	 * Builds the aggregates of every prefix of up to maxLength characters.
+	 * Words are visited in sorted order, so all words sharing a prefix come
+	 * one after another and each prefix is aggregated in a single pass.
+	 *
+	 * @param words
+	 *            - sorted words and their postings
+	 * @param maxLength
+	 *            - longest prefix to aggregate
+	 */
+	public PrefixIndex(SortedMap<String, PostingList> words, int maxLength) {
+		this.maxLength = maxLength;
+		this.aggregates = new HashMap<String, Aggregate>();
+
+		Builder[] builders = new Builder[maxLength];
+		for (int length = 1; length <= maxLength; length++) {
+			builders[length - 1] = new Builder();
+		}
+
+		for (Map.Entry<String, PostingList> entry : words.entrySet()) {
+			String word = entry.getKey();
+			for (int length = 1; length <= maxLength && length <= word.length(); length++) {
+				Builder builder = builders[length - 1];
+				if (builder.prefix == null || !word.startsWith(builder.prefix)) {
+					finish(builder);
+					builder.prefix = word.substring(0, length);
+				}
+				builder.add(entry.getValue());
+			}
+		}
+		for (Builder builder : builders) {
+			finish(builder);
+		}
+	}
+
+	/**
+	 * Stores the aggregate of a builder's current prefix, if any.
+	 *
+	 * @param builder
+	 *            - builder to finish
+	 */
+	private void finish(Builder builder) {
+		if (builder.prefix != null) {
+			aggregates.put(builder.prefix, builder.finish());
+		}
+	}
+
+	/**
+	 * Returns whether this index can answer a query word.
+	 *
+	 * @param query
+	 *            - cleaned query word
+	 * @return true if the word is short enough to be aggregated
+	 */
+	public boolean covers(String query) {
+		return query.length() > 0 && query.length() <= maxLength;
+	}
+
+	/**
+	 * Adds the aggregate of a prefix to per-document search totals, the way
+	 * a search adds the postings of every word starting with it.
+	 *
+	 * @param prefix
+	 *            - query word, {@link #covers(String)} must be true
+	 * @param totals
+	 *            - search totals of the documents found so far
+	 */
+	public void addTo(String prefix, SearchTotals totals) {
+		Aggregate aggregate = aggregates.get(prefix);
+		if (aggregate != null) {
+			aggregate.addTo(totals);
+		}
+	}
+
+	/**
+	 * Returns the number of prefixes aggregated.
+	 *
+	 * @return number of prefixes
+	 */
+	public int size() {
+		return aggregates.size();
+	}
+
+	/**
+	 * The documents of one prefix, sorted by id.
+	 */
+	static class Aggregate {
+
+		private final int[] documents;
+		private final int[] counts;
+		private final int[] firsts;
+
+		/**
+		 * Creates an aggregate.
+		 *
+		 * @param documents
+		 *            - document ids in ascending order
+		 * @param counts
+		 *            - total count of each document
+		 * @param firsts
+		 *            - earliest position of each document
+		 */
+		public Aggregate(int[] documents, int[] counts, int[] firsts) {
+			this.documents = documents;
+			this.counts = counts;
+			this.firsts = firsts;
+		}
+
+		/**
+		 * Adds the aggregate to per-document search totals, the way a search
+		 * adds the postings of every word starting with its prefix.
+		 *
+		 * @param totals
+		 *            - search totals of the documents found so far
+		 */
+		public void addTo(SearchTotals totals) {
+			for (int i = 0; i < documents.length; i++) {
+				totals.add(documents[i], counts[i], firsts[i]);
+			}
+		}
+
+		/**
+		 * Returns the number of documents of the prefix.
+		 *
+		 * @return number of documents
+		 */
+		public int size() {
+			return documents.length;
+		}
+	}
+
+	/**
+	 * Collects the postings of the words sharing one prefix. Totals are kept
+	 * by document id in growable arrays, together with the list of ids
+	 * touched, so starting the next prefix only clears those.
+	 */
+	static class Builder {
+
+		private String prefix;
+		private int[] counts = new int[16];
+		private int[] firsts = new int[16];
+		private int[] touched = new int[16];
+		private int size;
+
+		/**
+		 * Adds the postings of one word.
+		 *
+		 * @param postings
+		 *            - postings of a word starting with the prefix
+		 */
+		public void add(PostingList postings) {
+			PostingList.Cursor cursor = postings.cursor();
+			while (cursor.next()) {
+				int document = cursor.document();
+				if (document >= counts.length) {
+					int capacity = Math.max(document + 1, counts.length * 2);
+					counts = Arrays.copyOf(counts, capacity);
+					firsts = Arrays.copyOf(firsts, capacity);
+				}
+				if (counts[document] == 0) {
+					if (size == touched.length) {
+						touched = Arrays.copyOf(touched, size * 2);
+					}
+					touched[size++] = document;
+					firsts[document] = cursor.first();
+				} else if (cursor.first() < firsts[document]) {
+					firsts[document] = cursor.first();
+				}
+				counts[document] += cursor.count();
+			}
+		}
+
+		/**
+		 * Returns the aggregate of the words added since the last call, and
+		 * clears the totals for the next prefix.
+		 *
+		 * @return aggregate of the words added
+		 */
+		public Aggregate finish() {
+			Arrays.sort(touched, 0, size);
+			int[] documents = Arrays.copyOf(touched, size);
+			int[] sums = new int[size];
+			int[] earliest = new int[size];
+			for (int i = 0; i < size; i++) {
+				sums[i] = counts[documents[i]];
+				earliest[i] = firsts[documents[i]];
+				counts[documents[i]] = 0;
+			}
+			prefix = null;
+			size = 0;
+			return new Aggregate(documents, sums, earliest);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the results of recent query lines, so a line that is searched
+ * again costs a map lookup instead of a search. Holds at most a fixed number
+ * of lines and forgets the least recently used one to make room.
+ *
+ * Each entry records the index it was searched in and the
+ * {@link SearchableIndex#generation()} that index had, and is only reused for
+ * the same index while it still has that generation, so results never outlive
+ * a change to the index and are never handed out for a different index, whose
+ * generations count changes of its own. The cache does not know how the lines
+ * were searched: whoever owns it clears it when the search settings change.
+ */
+public class QueryCache {
+
+	/** Number of query lines kept by default. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final LinkedHashMap<String, Entry> entries;
+	private volatile int capacity;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder stale;
+	private final LongAdder evictions;
+
+	/**
+	 * Creates a cache holding up to {@link #DEFAULT_CAPACITY} query lines.
+	 */
+	public QueryCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity
+	 *            - largest number of query lines kept, 0 to keep none
+	 */
+	public QueryCache(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > QueryCache.this.capacity) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+		hits = new LongAdder();
+		misses = new LongAdder();
+		stale = new LongAdder();
+		evictions = new LongAdder();
+	}
+
+	/**
+	 * Returns the cached results of a query line, if they were searched in
+	 * the same generation of the same index.
+	 *
+	 * @param line
+	 *            - normalized query line
+	 * @param index
+	 *            - index being searched
+	 * @param generation
+	 *            - current generation of the index
+	 * @return cached results, or null if there are none for this index and
+	 *         generation
+	 */
+	public synchronized ArrayList<SearchResult> get(String line, SearchableIndex index, long generation) {
+		Entry entry = entries.get(line);
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		if (entry.index != index || entry.generation != generation) {
+			entries.remove(line);
+			stale.increment();
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.results;
+	}
+
+	/**
+	 * Counts a lookup as a hit without looking, for a query line that is
+	 * answered by a search of the same line already running.
+	 */
+	public void shared() {
+		hits.increment();
+	}
+
+	/**
+	 * Caches the results of a query line, unless the cache holds nothing.
+	 *
+	 * @param line
+	 *            - normalized query line
+	 * @param index
+	 *            - index that was searched
+	 * @param generation
+	 *            - generation of the index read before the search started
+	 * @param results
+	 *            - results of the search, not changed afterwards
+	 */
+	public synchronized void put(String line, SearchableIndex index, long generation,
+			ArrayList<SearchResult> results) {
+		if (capacity > 0) {
+			entries.put(line, new Entry(index, generation, results));
+		}
+	}
+
+	/**
+	 * Changes the number of query lines kept, forgetting every line cached so
+	 * far.
+	 *
+	 * @param capacity
+	 *            - largest number of query lines kept, 0 to keep none
+	 */
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		entries.clear();
+	}
+
+	/**
+	 * Forgets every cached query line.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of query lines cached.
+	 *
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns how many lookups found results to reuse.
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns how many lookups had to search, including those that found
+	 * results of an older generation or of another index.
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the share of lookups that found results to reuse.
+	 *
+	 * @return hit rate between 0 and 1, or 0 before the first lookup
+	 */
+	public double hitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits: %d, misses: %d (%d stale), hit rate: %.1f%%, evictions: %d, entries: %d",
+				getHits(), getMisses(), stale.sum(), 100 * hitRate(), evictions.sum(), size());
+	}
+
+	/**
+	 * Results of a query line, the index they were searched in and its
+	 * generation at the time.
+	 */
+	private static class Entry {
+
+		private final SearchableIndex index;
+		private final long generation;
+		private final ArrayList<SearchResult> results;
+
+		/**
+		 * Creates an entry.
+		 *
+		 * @param index
+		 *            - index that was searched
+		 * @param generation
+		 *            - generation of the index
+		 * @param results
+		 *            - results of the search
+		 */
+		public Entry(SearchableIndex index, long generation, ArrayList<SearchResult> results) {
+			this.index = index;
+			this.generation = generation;
+			this.results = results;
+		}
+	}
+}
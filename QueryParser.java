@@ -22,8 +22,95 @@ public class QueryParser {
 	/** Maps query line to the search results for that line. */
 	private final LinkedHashMap<String, ArrayList<SearchResult>> resultmap;
 
+	/** Whether query words must match whole words instead of prefixes. */
+	private boolean exact;
+
+	/** Largest number of results kept for each query line. */
+	private int limit = Integer.MAX_VALUE;
+
+	/** Whether results are ranked by relevance instead of total count. */
+	private boolean ranked;
+
+	/** Whether lines with operators or phrases are run as boolean queries. */
+	private boolean operators;
+
+	/** Results of recent query lines, cleared when the settings change. */
+	private final QueryCache cache;
+
 	public QueryParser() {
 		resultmap = new LinkedHashMap<>();
+		cache = new QueryCache();
+	}
+
+	/**
+	 * Sets whether query words must match whole words in the index, or any
+	 * word they are a prefix of, which is the default.
+	 * 
+	 * @param exact
+	 *            - true for exact search, false for partial search
+	 */
+	public void setExact(boolean exact) {
+		this.exact = exact;
+		cache.clear();
+	}
+
+	/**
+	 * Caps the number of results kept for each query line. Only the best
+	 * results are kept, picked without sorting every matching document.
+	 * 
+	 * @param limit
+	 *            - largest number of results per query line
+	 */
+	public void setLimit(int limit) {
+		this.limit = Math.max(0, limit);
+		cache.clear();
+	}
+
+	/**
+	 * Sets whether results are ranked by {@link BM25} relevance, or by total
+	 * count, then first position, which is the default.
+	 * 
+	 * @param ranked
+	 *            - true to rank by relevance
+	 */
+	public void setRanked(boolean ranked) {
+		this.ranked = ranked;
+		cache.clear();
+	}
+
+	/**
+	 * Sets whether query lines holding the operators AND, OR, NOT or NEAR/k,
+	 * or a quoted phrase, are run as a {@link BooleanQuery}. Otherwise every
+	 * word of a line is searched as if joined by OR, which is the default.
+	 * 
+	 * @param operators
+	 *            - true to run boolean queries
+	 */
+	public void setOperators(boolean operators) {
+		this.operators = operators;
+		cache.clear();
+	}
+
+	/**
+	 * Sets how many query lines the result cache holds. A line searched again
+	 * in the same index reuses its cached results as long as the index has not
+	 * changed since.
+	 * 
+	 * @param entries
+	 *            - largest number of lines cached, 0 to turn the cache off
+	 */
+	public void setCacheSize(int entries) {
+		cache.setCapacity(entries);
+	}
+
+	/**
+	 * Returns the result cache, whose counters tell how often query lines
+	 * were answered without searching.
+	 * 
+	 * @return result cache
+	 */
+	public QueryCache getCache() {
+		return cache;
 	}
 
 	/**
@@ -64,7 +151,7 @@ public class QueryParser {
 	 * @throws IOException
 	 */
 	
-	public void SearchHelp(InvertedIndex index, Path querypath) throws IOException{
+	public void SearchHelp(SearchableIndex index, Path querypath) throws IOException{
 		
 		List<String> temp;
 		try (BufferedReader reader = Files.newBufferedReader(querypath,
@@ -72,12 +159,25 @@ public class QueryParser {
 		) {
 			String line;
 			while ((line = reader.readLine()) != null) {
-				line = FileParser.cleanText(line);
+				BooleanQuery query = operators ? BooleanQuery.parse(line) : null;
+				line = query != null ? query.toString() : FileParser.cleanText(line);
 				if (line.isEmpty()) {
 					continue;
 				}
-				temp = (FileParser.parseText(line));
-				resultmap.put(line, index.search(temp));
+				long generation = index.generation();
+				ArrayList<SearchResult> results = cache.get(line, index, generation);
+				if (results == null) {
+					temp = (FileParser.parseText(line));
+					if (query != null) {
+						results = index.search(query, exact, ranked, limit);
+					} else if (ranked) {
+						results = index.rankedSearch(temp, exact, limit);
+					} else {
+						results = exact ? index.exactSearch(temp, limit) : index.search(temp, limit);
+					}
+					cache.put(line, index, generation, results);
+				}
+				resultmap.put(line, results);
 
 			}
 		}
@@ -1,7 +1,14 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
 
 /**
  * This class is a custom object containing the results of each word. a Results
- * object stores (String path, int totalcount, int firstloc)
+ * object stores (int document, int totalcount, int firstloc), where document
+ * is an id in a {@link DocumentTable}. The path is only looked up when the
+ * result is compared on a tie or written out.
  * 
  * This class has an overridden compareTo method that allows us to sort our
  * search results by the number of total times query appears in file followed by the first
@@ -11,32 +18,129 @@
  *  Something like:
  * 
  * Stores search results for easy sorting by frequency and initial position.
+ * Ranked searches also store a relevance score, see {@link #BY_SCORE}.
  */
 public class SearchResult implements Comparable<SearchResult> {
 
-	private final String path;
+	private final DocumentTable documents;
+	private final int document;
 	private int totalcount;
 	private int firstloc;
+	private double score;
 
 	/**
-	 * Initializes results with the specified path, count, and location.
+	 * Orders results by highest score, then like
+	 * {@link #compareTo(SearchResult)}.
+	 */
+	public static final Comparator<SearchResult> BY_SCORE = (a, b) -> {
+		int compare = Double.compare(b.score, a.score);
+		return compare != 0 ? compare : a.compareTo(b);
+	};
+
+	/**
+	 * Initializes results with the specified document, count, and location.
 	 * 
-	 * @param path - path where query was found
+	 * @param documents - table used to look up the path of the document
+	 * @param document - id of the document where query was found
 	 * @param totalcount - total of times the query was found at the path
 	 * @param firstloc - initial position query was found at the path
 	 */
-	public SearchResult(String path, int totalcount, int firstloc) {
-		this.path = path;
+	public SearchResult(DocumentTable documents, int document, int totalcount, int firstloc) {
+		this(documents, document, totalcount, firstloc, 0);
+	}
+
+	/**
+	 * Initializes ranked results with the specified document, count,
+	 * location and score.
+	 * 
+	 * @param documents - table used to look up the path of the document
+	 * @param document - id of the document where query was found
+	 * @param totalcount - total of times the query was found at the path
+	 * @param firstloc - initial position query was found at the path
+	 * @param score - relevance of the document to the query
+	 */
+	public SearchResult(DocumentTable documents, int document, int totalcount, int firstloc,
+			double score) {
+		this.documents = documents;
+		this.document = document;
 		this.totalcount = totalcount;
 		this.firstloc = firstloc;
+		this.score = score;
 	}
 	
+	/**
+	 * Creates the results of every document found by a search, keeping only
+	 * the best k. With fewer matching documents than k every result is kept
+	 * and sorted. Otherwise the best k are picked with a bounded heap whose
+	 * head is the worst result kept, so a document is only turned into a
+	 * result if it could beat that one, and only k results are sorted. Ranked
+	 * totals are ordered {@link #BY_SCORE}, others by
+	 * {@link #compareTo(SearchResult)}. Only the documents found are looked
+	 * at.
+	 * 
+	 * @param documents - table used to look up the paths of the documents
+	 * @param totals - count, earliest position and score of each document found
+	 * @param k - largest number of results to return
+	 * @return at most k sorted results
+	 */
+	public static ArrayList<SearchResult> top(DocumentTable documents, SearchTotals totals, int k) {
+		boolean ranked = totals.isRanked();
+		Comparator<SearchResult> order = ranked ? BY_SCORE : Comparator.naturalOrder();
+		int found = totals.size();
+
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>(Math.min(found, Math.max(k, 0)));
+		if (found <= k) {
+			for (int entry = 0; entry < found; entry++) {
+				results.add(new SearchResult(documents, totals.document(entry), totals.totalcount(entry),
+						totals.firstloc(entry), totals.score(entry)));
+			}
+			results.sort(order);
+			return results;
+		}
+		if (k <= 0) {
+			return results;
+		}
+
+		PriorityQueue<SearchResult> heap = new PriorityQueue<SearchResult>(k, Collections.reverseOrder(order));
+		for (int entry = 0; entry < found; entry++) {
+			int totalcount = totals.totalcount(entry);
+			int firstloc = totals.firstloc(entry);
+			double score = totals.score(entry);
+			if (heap.size() < k) {
+				heap.add(new SearchResult(documents, totals.document(entry), totalcount, firstloc, score));
+				continue;
+			}
+			SearchResult worst = heap.peek();
+			if (ranked ? score < worst.score : totalcount < worst.totalcount
+					|| (totalcount == worst.totalcount && firstloc > worst.firstloc)) {
+				continue;
+			}
+			SearchResult result = new SearchResult(documents, totals.document(entry), totalcount, firstloc,
+					score);
+			if (order.compare(result, worst) < 0) {
+				heap.poll();
+				heap.add(result);
+			}
+		}
+		results.addAll(heap);
+		results.sort(order);
+		return results;
+	}
+
+	/**
+	 * returns the document id of the Results object
+	 * @return document
+	 */
+	public int getDocument() {
+		return document;
+	}
+
 	/**
 	 * returns the path of the Results object
 	 * @return path
 	 */
 	public String getPath() {
-		return path;
+		return documents.getPath(document);
 	}
 
 	/**
@@ -55,6 +159,15 @@ public class SearchResult implements Comparable<SearchResult> {
 		this.totalcount += totalcount;
 	}
 	
+	/**
+	 * returns the relevance score of the Results object, 0 unless it came
+	 * from a ranked search
+	 * @return score
+	 */
+	public double getScore() {
+		return score;
+	}
+
 	/**
 	 * returns the firstloc of the Results object
 	 * @return
@@ -85,7 +198,7 @@ public class SearchResult implements Comparable<SearchResult> {
 
 	@Override
 	public String toString() {
-		return "\"" + path + "\"" + ", " + totalcount + ", " + firstloc;
+		return "\"" + getPath() + "\"" + ", " + totalcount + ", " + firstloc;
 	}
 
 	/**
@@ -107,8 +220,8 @@ public class SearchResult implements Comparable<SearchResult> {
 			if (this.firstloc != cur.firstloc) {
 				return Integer.compare(this.firstloc, cur.firstloc);
 			} else {
-				return String.CASE_INSENSITIVE_ORDER.compare(this.path,
-						cur.path);
+				return String.CASE_INSENSITIVE_ORDER.compare(this.getPath(),
+						cur.getPath());
 			}
 		}
 	}
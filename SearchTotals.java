@@ -0,0 +1,192 @@
+import java.util.Arrays;
+
+/**
+ * Adds up the count, earliest position and score of every document a search
+ * finds. Only documents actually found take room: they are stored one after
+ * another in the order they were first found, and an open-addressing table
+ * maps a document id to its entry. A search finding a handful of documents in
+ * a large index allocates for that handful instead of for every document id,
+ * and {@link SearchResult#top(DocumentTable, SearchTotals, int)} walks only
+ * them.
+ */
+public class SearchTotals {
+
+	/** Number of entries the totals start with room for. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final boolean ranked;
+
+	/** Entry index plus one for each slot, 0 if the slot is empty. */
+	private int[] slots;
+	private int[] documents;
+	private int[] totalcounts;
+	private int[] firstlocs;
+	private double[] scores;
+	private int size;
+
+	/**
+	 * Initializes empty totals.
+	 *
+	 * @param ranked
+	 *            - true to add up scores as well
+	 */
+	public SearchTotals(boolean ranked) {
+		this.ranked = ranked;
+		slots = new int[INITIAL_CAPACITY * 2];
+		documents = new int[INITIAL_CAPACITY];
+		totalcounts = new int[INITIAL_CAPACITY];
+		firstlocs = new int[INITIAL_CAPACITY];
+		scores = ranked ? new double[INITIAL_CAPACITY] : null;
+		size = 0;
+	}
+
+	/**
+	 * Adds a count and position found in a document.
+	 *
+	 * @param document
+	 *            - id of the document
+	 * @param totalcount
+	 *            - number of times a query word was found in it
+	 * @param firstloc
+	 *            - earliest position it was found at
+	 */
+	public void add(int document, int totalcount, int firstloc) {
+		add(document, totalcount, firstloc, 0);
+	}
+
+	/**
+	 * Adds a count, position and score found in a document. The score is
+	 * ignored unless the totals are ranked.
+	 *
+	 * @param document
+	 *            - id of the document
+	 * @param totalcount
+	 *            - number of times a query word was found in it
+	 * @param firstloc
+	 *            - earliest position it was found at
+	 * @param score
+	 *            - relevance of the query word to the document
+	 */
+	public void add(int document, int totalcount, int firstloc, double score) {
+		int slot = slot(document);
+		int entry = slots[slot] - 1;
+		if (entry < 0) {
+			if (size == documents.length) {
+				grow();
+				slot = slot(document);
+			}
+			entry = size++;
+			slots[slot] = entry + 1;
+			documents[entry] = document;
+			totalcounts[entry] = totalcount;
+			firstlocs[entry] = firstloc;
+			if (ranked) {
+				scores[entry] = score;
+			}
+			return;
+		}
+		if (firstloc < firstlocs[entry]) {
+			firstlocs[entry] = firstloc;
+		}
+		totalcounts[entry] += totalcount;
+		if (ranked) {
+			scores[entry] += score;
+		}
+	}
+
+	/**
+	 * Tests whether the totals add up scores.
+	 *
+	 * @return true if ranked
+	 */
+	public boolean isRanked() {
+		return ranked;
+	}
+
+	/**
+	 * Returns the number of documents found.
+	 *
+	 * @return number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of the document of an entry.
+	 *
+	 * @param entry
+	 *            - entry index, from 0 to {@link #size()}
+	 * @return document id
+	 */
+	public int document(int entry) {
+		return documents[entry];
+	}
+
+	/**
+	 * Returns the total count of an entry.
+	 *
+	 * @param entry
+	 *            - entry index, from 0 to {@link #size()}
+	 * @return total count
+	 */
+	public int totalcount(int entry) {
+		return totalcounts[entry];
+	}
+
+	/**
+	 * Returns the earliest position of an entry.
+	 *
+	 * @param entry
+	 *            - entry index, from 0 to {@link #size()}
+	 * @return earliest position
+	 */
+	public int firstloc(int entry) {
+		return firstlocs[entry];
+	}
+
+	/**
+	 * Returns the score of an entry.
+	 *
+	 * @param entry
+	 *            - entry index, from 0 to {@link #size()}
+	 * @return score, or 0 if the totals are not ranked
+	 */
+	public double score(int entry) {
+		return ranked ? scores[entry] : 0;
+	}
+
+	/**
+	 * Finds the slot of a document, or the empty slot it would go in.
+	 *
+	 * @param document
+	 *            - id of the document
+	 * @return slot index
+	 */
+	private int slot(int document) {
+		int mask = slots.length - 1;
+		int slot = (document * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+		while (slots[slot] != 0 && documents[slots[slot] - 1] != document) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the room for entries and rehashes them, keeping the table at
+	 * most half full.
+	 */
+	private void grow() {
+		int capacity = documents.length * 2;
+		documents = Arrays.copyOf(documents, capacity);
+		totalcounts = Arrays.copyOf(totalcounts, capacity);
+		firstlocs = Arrays.copyOf(firstlocs, capacity);
+		if (ranked) {
+			scores = Arrays.copyOf(scores, capacity);
+		}
+		slots = new int[capacity * 2];
+		for (int entry = 0; entry < size; entry++) {
+			slots[slot(documents[entry])] = entry + 1;
+		}
+	}
+}
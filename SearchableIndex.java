@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index that query files can be run against: an {@link InvertedIndex} held
+ * in memory, a {@link SegmentedIndex} made of several sealed in-memory
+ * segments that can be searched while files are still added, or a
+ * {@link MappedIndex} read straight from an index file.
+ */
+public interface SearchableIndex {
+
+	/**
+	 * Returns partial search results, such that any word in the index that
+	 * starts with a query word has its results returned.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	public ArrayList<SearchResult> search(List<String> queryWords);
+
+	/**
+	 * Returns exact search results, such that only words in the index equal
+	 * to a query word have their results returned.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords);
+
+	/**
+	 * Returns the best k partial search results, see
+	 * {@link #search(List)}.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by
+	 *         {@link SearchResult#compareTo(SearchResult)}
+	 */
+	public ArrayList<SearchResult> search(List<String> queryWords, int k);
+
+	/**
+	 * Returns the best k exact search results, see
+	 * {@link #exactSearch(List)}.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by
+	 *         {@link SearchResult#compareTo(SearchResult)}
+	 */
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords, int k);
+
+	/**
+	 * Returns the best k results ranked by {@link BM25} relevance instead of
+	 * by total count, see {@link SearchResult#BY_SCORE}.
+	 * 
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by {@link SearchResult#BY_SCORE}
+	 */
+	public ArrayList<SearchResult> rankedSearch(List<String> queryWords, boolean exact, int k);
+
+	/**
+	 * Returns the best k documents matching a query of words joined by AND,
+	 * OR and NOT.
+	 * 
+	 * @param query
+	 *            - parsed query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k sorted results
+	 */
+	public ArrayList<SearchResult> search(BooleanQuery query, boolean exact, boolean ranked, int k);
+
+	/**
+	 * Returns the positions of every word equal to, or starting with, a query
+	 * word, reading them only for some of the documents.
+	 * 
+	 * @param queryWord
+	 *            - cleaned query word
+	 * @param exact
+	 *            - true to match the whole word, false to match it as a prefix
+	 * @param documents
+	 *            - ids of the documents to read the positions of
+	 * @return sorted positions of each of those documents that holds a
+	 *         matching word
+	 */
+	public Map<Integer, int[]> positions(String queryWord, boolean exact, BitSet documents);
+
+	/**
+	 * Returns a number that changes whenever the words of the index change,
+	 * so results searched under one generation can be reused as long as the
+	 * generation stays the same.
+	 * 
+	 * @return current generation
+	 */
+	public long generation();
+
+	/**
+	 * Returns the table mapping the document ids of the results to paths.
+	 * 
+	 * @return document table
+	 */
+	public DocumentTable getDocuments();
+
+	/**
+	 * Prints the index to a passed in file.
+	 * 
+	 * @param outpath
+	 *            - Location Where the Index will be written too
+	 */
+	public void print(String outpath);
+}
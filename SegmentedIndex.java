@@ -0,0 +1,601 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An index made of several immutable segments plus one mutable buffer, in the
+ * style of a log-structured merge tree. New words go to the buffer, which
+ * only locks itself, so searches of the other segments never wait on a
+ * writer. Once the buffer is estimated to hold a given number of bytes it is
+ * sealed as a new segment and replaced by an empty one.
+ *
+ * A background thread keeps the number of segments small. Every segment has
+ * a level, based on its size relative to the flush size, and whenever
+ * mergeFactor adjacent segments share a level they are merged into one
+ * segment of the next level. Adjacent segments are merged so the positions of
+ * a document split over several segments stay in order.
+ *
+ * Searches take a snapshot of the segments, search each one, and add up the
+ * results of every document. All segments share one {@link DocumentTable}.
+ */
+public class SegmentedIndex implements SearchableIndex {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/** Default estimated size of the buffer before it is sealed. */
+	public static final long DEFAULT_FLUSH_BYTES = 32L << 20;
+
+	/** Default number of segments of a level that are merged at once. */
+	public static final int DEFAULT_MERGE_FACTOR = 4;
+
+	private final DocumentTable documents;
+	private final long flushBytes;
+	private final int mergeFactor;
+
+	/**
+	 * Held shared by writers of the buffer, and exclusively to seal it. Prefers
+	 * the sealing writer, so a steady stream of adds cannot hold off a flush.
+	 */
+	private final IndexLock rotation;
+
+	/** Estimated bytes added to the current buffer. */
+	private final AtomicLong buffered;
+
+	/** Counts the words and indexes added, see {@link #generation()}. */
+	private final AtomicLong generation;
+
+	private final Thread merger;
+	private volatile Snapshot snapshot;
+	private boolean merging;
+	private boolean closed;
+	private int flushes;
+	private int merges;
+
+	/**
+	 * Creates an empty segmented index with the default flush size and merge
+	 * factor.
+	 *
+	 * @param documents
+	 *            - table mapping document paths to ids
+	 */
+	public SegmentedIndex(DocumentTable documents) {
+		this(documents, DEFAULT_FLUSH_BYTES, DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Creates an empty segmented index and starts its background merge
+	 * thread.
+	 *
+	 * @param documents
+	 *            - table mapping document paths to ids
+	 * @param flushBytes
+	 *            - estimated size of the buffer before it is sealed
+	 * @param mergeFactor
+	 *            - number of segments of a level that are merged at once
+	 */
+	public SegmentedIndex(DocumentTable documents, long flushBytes, int mergeFactor) {
+		this.documents = documents;
+		this.flushBytes = Math.max(1, flushBytes);
+		this.mergeFactor = Math.max(2, mergeFactor);
+		this.rotation = new WriterPreferringLock();
+		this.buffered = new AtomicLong();
+		this.generation = new AtomicLong();
+		this.snapshot = new Snapshot(new InvertedIndex(documents), Collections.emptyList());
+
+		merger = new Thread(this::mergeLoop, "segment-merger");
+		merger.setDaemon(true);
+		merger.start();
+	}
+
+	/**
+	 * Returns the table used to map document paths to ids.
+	 *
+	 * @return document table
+	 */
+	@Override
+	public DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Adds a word to the buffer, and seals the buffer once the bytes added
+	 * to it, estimated by {@link InvertedIndex#addEstimated(String, int, int)},
+	 * reach the flush size.
+	 *
+	 * @param word
+	 *            - cleaned word
+	 * @param document
+	 *            - id of the document in this index's {@link DocumentTable}
+	 * @param position
+	 *            - position of the word in the document
+	 */
+	public void add(String word, int document, int position) {
+		long bytes;
+		rotation.lockRead();
+		try {
+			bytes = snapshot.buffer.addEstimated(word, document, position);
+		} finally {
+			rotation.unlockRead();
+		}
+		generation.incrementAndGet();
+		if (buffered.addAndGet(bytes) >= flushBytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Adds every word of another index, usually holding a single file, to
+	 * the buffer. The other index must share this index's document table.
+	 *
+	 * @param other
+	 *            - index to add
+	 */
+	public void addAll(InvertedIndex other) {
+		long bytes = other.estimateBytes();
+		rotation.lockRead();
+		try {
+			snapshot.buffer.addAll(other);
+		} finally {
+			rotation.unlockRead();
+		}
+		generation.incrementAndGet();
+		if (buffered.addAndGet(bytes) >= flushBytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Seals the buffer as a new segment, unless it is empty, and starts a
+	 * new buffer. Wakes the merge thread if the new segment completes a level.
+	 */
+	public void flush() {
+		rotation.lockWrite();
+		try {
+			synchronized (this) {
+				InvertedIndex sealed = snapshot.buffer;
+				long bytes = buffered.getAndSet(0);
+				if (bytes == 0) {
+					return;
+				}
+
+				ArrayList<Segment> segments = new ArrayList<Segment>(snapshot.segments);
+				segments.add(new Segment(sealed, bytes, level(bytes)));
+				snapshot = new Snapshot(new InvertedIndex(documents), segments);
+				flushes++;
+				logger.debug("Sealed segment {} of about {} bytes", segments.size(), bytes);
+				notifyAll();
+			}
+		} finally {
+			rotation.unlockWrite();
+		}
+	}
+
+	/**
+	 * Waits until the background thread has no segments left to merge.
+	 */
+	public synchronized void awaitMerges() {
+		boolean interrupted = false;
+		while (merging || (!closed && pickMerge(snapshot.segments) >= 0)) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops the background merge thread once it finishes its current merge.
+	 * The index can still be searched, and written to, afterwards.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		boolean interrupted = false;
+		while (merger.isAlive()) {
+			try {
+				merger.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of sealed segments.
+	 *
+	 * @return number of segments
+	 */
+	public int segments() {
+		return snapshot.segments.size();
+	}
+
+	/**
+	 * Searches every segment and the buffer, and adds up the results of each
+	 * document.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words, each treated as a prefix
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	@Override
+	public ArrayList<SearchResult> search(List<String> queryWords) {
+		return search(queryWords, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Searches every segment and the buffer for whole words, and adds up the
+	 * results of each document.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @return results sorted by {@link SearchResult#compareTo(SearchResult)}
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords) {
+		return search(queryWords, true, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(List<String> queryWords, int k) {
+		return search(queryWords, false, k);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(List<String> queryWords, int k) {
+		return search(queryWords, true, k);
+	}
+
+	/**
+	 * Ranks the results of every segment and the buffer by {@link BM25}
+	 * relevance. Words added one at a time can split a document over several
+	 * segments, and BM25 does not add up over parts of a document, so the
+	 * counts of each matching word in each document are first added up over
+	 * all segments. Each document is then scored once per matching word, with
+	 * the number of documents the word is found in over all segments.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by {@link SearchResult#BY_SCORE}
+	 */
+	@Override
+	public ArrayList<SearchResult> rankedSearch(List<String> queryWords, boolean exact, int k) {
+		Snapshot current = snapshot;
+		if (current.segments.isEmpty()) {
+			return current.buffer.rankedSearch(queryWords, exact, k);
+		}
+
+		TreeMap<String, SearchTotals> terms = new TreeMap<String, SearchTotals>();
+		for (Segment segment : current.segments) {
+			segment.index.addTerms(queryWords, exact, terms);
+		}
+		current.buffer.addTerms(queryWords, exact, terms);
+
+		SearchTotals totals = new SearchTotals(true);
+		double averageLength = documents.averageLength();
+		int documentCount = Math.max(1, documents.liveCount());
+		for (String query : queryWords) {
+			for (Map.Entry<String, SearchTotals> term : terms.tailMap(query).entrySet()) {
+				if (exact ? !term.getKey().equals(query) : !term.getKey().startsWith(query)) {
+					break;
+				}
+				SearchTotals counts = term.getValue();
+				double idf = BM25.idf(counts.size(), documentCount);
+				for (int entry = 0; entry < counts.size(); entry++) {
+					int document = counts.document(entry);
+					int totalcount = counts.totalcount(entry);
+					totals.add(document, totalcount, counts.firstloc(entry),
+							BM25.score(idf, totalcount, documents.getLength(document), averageLength));
+				}
+			}
+		}
+		return SearchResult.top(documents, totals, k);
+	}
+
+	/**
+	 * Runs a boolean query by searching each of its words on its own, see
+	 * {@link BooleanQuery#evaluate(SearchableIndex, boolean, boolean, int)}.
+	 * Words added one at a time can split a document over several segments,
+	 * so the segments cannot each run the query on their own.
+	 *
+	 * @param query
+	 *            - parsed query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param ranked
+	 *            - true to rank the results by {@link BM25} relevance
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k sorted results
+	 */
+	@Override
+	public ArrayList<SearchResult> search(BooleanQuery query, boolean exact, boolean ranked, int k) {
+		return query.evaluate(this, exact, ranked, k);
+	}
+
+	/**
+	 * Returns the generation of the index, which grows after every word or
+	 * index added. Flushes and merges move words between segments without
+	 * changing them, so they keep the generation.
+	 *
+	 * @return current generation
+	 */
+	@Override
+	public long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * Reads the positions from every segment and the buffer, and merges the
+	 * positions of a document found in several of them.
+	 */
+	@Override
+	public Map<Integer, int[]> positions(String queryWord, boolean exact, BitSet documents) {
+		Snapshot current = snapshot;
+		Map<Integer, int[]> positions = current.buffer.positions(queryWord, exact, documents);
+		for (Segment segment : current.segments) {
+			for (Map.Entry<Integer, int[]> entry : segment.index.positions(queryWord, exact, documents)
+					.entrySet()) {
+				BooleanQuery.addPositions(positions, entry.getKey(), entry.getValue());
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Runs an exact or partial search of every segment and the buffer, and
+	 * adds up the results of each document. Every segment is searched in
+	 * full, since a document outside the best k of each segment can still be
+	 * among the best k overall.
+	 *
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by
+	 *         {@link SearchResult#compareTo(SearchResult)}
+	 */
+	private ArrayList<SearchResult> search(List<String> queryWords, boolean exact, int k) {
+		Snapshot current = snapshot;
+		if (current.segments.isEmpty()) {
+			return exact ? current.buffer.exactSearch(queryWords, k) : current.buffer.search(queryWords, k);
+		}
+
+		ArrayList<ArrayList<SearchResult>> parts = new ArrayList<ArrayList<SearchResult>>(
+				current.segments.size() + 1);
+		for (Segment segment : current.segments) {
+			parts.add(exact ? segment.index.exactSearch(queryWords) : segment.index.search(queryWords));
+		}
+		parts.add(exact ? current.buffer.exactSearch(queryWords) : current.buffer.search(queryWords));
+		return combine(parts, k);
+	}
+
+	/**
+	 * Adds up the results of each document over the searches of several
+	 * segments.
+	 *
+	 * @param parts
+	 *            - full results of each segment
+	 * @param k
+	 *            - largest number of results to return
+	 * @return at most k results sorted by
+	 *         {@link SearchResult#compareTo(SearchResult)}
+	 */
+	private ArrayList<SearchResult> combine(ArrayList<ArrayList<SearchResult>> parts, int k) {
+		SearchTotals totals = new SearchTotals(false);
+		for (ArrayList<SearchResult> part : parts) {
+			for (SearchResult result : part) {
+				totals.add(result.getDocument(), result.getTotalcount(), result.getFirstloc());
+			}
+		}
+		return SearchResult.top(documents, totals, k);
+	}
+
+	/**
+	 * Merges every segment and the buffer into a single index.
+	 *
+	 * @return new index holding every word of this one
+	 */
+	public InvertedIndex toInvertedIndex() {
+		Snapshot current = snapshot;
+		ArrayList<InvertedIndex> indexes = new ArrayList<InvertedIndex>(current.segments.size() + 1);
+		for (Segment segment : current.segments) {
+			indexes.add(segment.index);
+		}
+		indexes.add(current.buffer);
+
+		InvertedIndex all = new InvertedIndex(documents);
+		all.addAll(indexes);
+		return all;
+	}
+
+	/**
+	 * Prints the index to a passed in file, as if it were one
+	 * {@link InvertedIndex}.
+	 *
+	 * @param outpath
+	 *            - Location Where the Index will be written too
+	 */
+	@Override
+	public void print(String outpath) {
+		toInvertedIndex().print(outpath);
+	}
+
+	/**
+	 * Returns the level of a segment of a given size. Segments up to
+	 * mergeFactor times the flush size are level 0, up to mergeFactor squared
+	 * times level 1, and so on.
+	 *
+	 * @param bytes
+	 *            - estimated size of the segment
+	 * @return level of the segment
+	 */
+	private int level(long bytes) {
+		int level = 0;
+		long limit = flushBytes * mergeFactor;
+		while (bytes >= limit && level < 32) {
+			level++;
+			limit = limit > Long.MAX_VALUE / mergeFactor ? Long.MAX_VALUE : limit * mergeFactor;
+		}
+		return level;
+	}
+
+	/**
+	 * Finds the first mergeFactor adjacent segments that share a level.
+	 *
+	 * @param segments
+	 *            - segments, oldest first
+	 * @return index of the first segment to merge, or -1 if there is none
+	 */
+	private int pickMerge(List<Segment> segments) {
+		int run = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			if (i > 0 && segments.get(i).level == segments.get(i - 1).level) {
+				run++;
+			} else {
+				run = 1;
+			}
+			if (run == mergeFactor) {
+				return i - mergeFactor + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Runs on the background thread, merging segments whenever a level is
+	 * full. Only this thread removes segments and flushes only append them,
+	 * so the segments picked stay at the same place during the merge.
+	 */
+	private void mergeLoop() {
+		while (true) {
+			int first = -1;
+			List<Segment> picked;
+			synchronized (this) {
+				while (!closed && (first = pickMerge(snapshot.segments)) < 0) {
+					merging = false;
+					notifyAll();
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						logger.warn("Segment merger interrupted");
+						closed = true;
+					}
+				}
+				if (closed) {
+					merging = false;
+					notifyAll();
+					return;
+				}
+				merging = true;
+				picked = new ArrayList<Segment>(snapshot.segments.subList(first, first + mergeFactor));
+			}
+
+			long start = System.nanoTime();
+			ArrayList<InvertedIndex> indexes = new ArrayList<InvertedIndex>(picked.size());
+			long bytes = 0;
+			for (Segment segment : picked) {
+				indexes.add(segment.index);
+				bytes += segment.bytes;
+			}
+			InvertedIndex merged = new InvertedIndex(documents);
+			merged.addAll(indexes);
+			Segment segment = new Segment(merged, bytes, Math.max(picked.get(0).level + 1, level(bytes)));
+
+			synchronized (this) {
+				ArrayList<Segment> segments = new ArrayList<Segment>(snapshot.segments);
+				segments.subList(first, first + mergeFactor).clear();
+				segments.add(first, segment);
+				snapshot = new Snapshot(snapshot.buffer, segments);
+				merges++;
+			}
+			logger.debug("Merged {} segments into level {} in {} ms", picked.size(), segment.level,
+					(System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	/**
+	 * Returns the number of segments, flushes and background merges so far.
+	 *
+	 * @return summary of the segments
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder levels = new StringBuilder();
+		for (Segment segment : snapshot.segments) {
+			levels.append(levels.length() == 0 ? "" : ",").append(segment.level);
+		}
+		return String.format("Segments: %d (levels %s) after %d flush(es) and %d merge(s)",
+				snapshot.segments.size(), levels, flushes, merges);
+	}
+
+	/**
+	 * The buffer and segments at one point in time. Never changed once
+	 * created, so searches can use it without locking.
+	 */
+	private static class Snapshot {
+
+		private final InvertedIndex buffer;
+		private final List<Segment> segments;
+
+		/**
+		 * Creates a snapshot.
+		 *
+		 * @param buffer
+		 *            - index new words are added to
+		 * @param segments
+		 *            - sealed segments, oldest first
+		 */
+		public Snapshot(InvertedIndex buffer, List<Segment> segments) {
+			this.buffer = buffer;
+			this.segments = Collections.unmodifiableList(segments);
+		}
+	}
+
+	/**
+	 * A sealed index that is no longer written to.
+	 */
+	private static class Segment {
+
+		private final InvertedIndex index;
+		private final long bytes;
+		private final int level;
+
+		/**
+		 * Creates a segment.
+		 *
+		 * @param index
+		 *            - sealed index
+		 * @param bytes
+		 *            - estimated size of the index
+		 * @param level
+		 *            - merge level of the index
+		 */
+		public Segment(InvertedIndex index, long bytes, int level) {
+			this.index = index;
+			this.bytes = bytes;
+			this.level = level;
+		}
+	}
+}
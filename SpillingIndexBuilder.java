@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Builds an index file for a corpus that does not fit on the heap. Files are
+ * parsed into an in-memory buffer until it reaches a memory budget, then the
+ * buffer is written to a temporary run file in the {@link IndexFileWriter}
+ * format and emptied. At the end all runs are merged, one word at a time,
+ * into the final index file, so only the postings of a single word from each
+ * run are ever held in memory during the merge.
+ *
+ * Every file is parsed into exactly one run and document ids grow from run
+ * to run, so a word's postings from different runs never share a document.
+ */
+public class SpillingIndexBuilder {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/** Default memory budget of the in-memory buffer. */
+	public static final long DEFAULT_BUDGET = 256L << 20;
+
+	private final long budget;
+	private int files;
+	private int runs;
+	private long spilled;
+	private long mergeNanos;
+
+	/**
+	 * Creates a builder that spills to disk once the buffer is estimated to
+	 * use the given number of bytes.
+	 *
+	 * @param budget
+	 *            - memory budget of the buffer in bytes
+	 */
+	public SpillingIndexBuilder(long budget) {
+		this.budget = Math.max(1, budget);
+	}
+
+	/**
+	 * Builds an index file from every .txt file in a directory and its
+	 * sub-directories.
+	 *
+	 * @param directory
+	 *            - directory to traverse
+	 * @param outpath
+	 *            - index file to write
+	 * @throws IOException
+	 *             if the directory cannot be traversed, or a run or the index
+	 *             file cannot be written
+	 */
+	public void build(Path directory, Path outpath) throws IOException {
+		build(DirectoryTraverser.traverse(directory), outpath);
+	}
+
+	/**
+	 * Builds an index file from a list of text files. Run files are kept in a
+	 * temporary directory next to the index file and deleted afterwards.
+	 *
+	 * @param paths
+	 *            - text files to parse
+	 * @param outpath
+	 *            - index file to write
+	 * @throws IOException
+	 *             if a run or the index file cannot be written
+	 */
+	public void build(List<Path> paths, Path outpath) throws IOException {
+		DocumentTable documents = new DocumentTable();
+		Path parent = outpath.toAbsolutePath().getParent();
+		Path tempdir = Files.createTempDirectory(parent, "spill");
+		ArrayList<Path> runfiles = new ArrayList<Path>();
+
+		try {
+			InvertedIndex buffer = new InvertedIndex(documents);
+			long used = 0;
+			for (Path file : paths) {
+				files++;
+				try {
+					InvertedIndex fileindex = IndexBuilder.buildFile(documents, file);
+					used += fileindex.estimateBytes();
+					buffer.addAll(fileindex);
+				} catch (IOException | NullPointerException e) {
+					System.out.println("Issue reading file");
+				}
+
+				if (used >= budget) {
+					runfiles.add(spill(buffer, tempdir, runfiles.size()));
+					buffer = new InvertedIndex(documents);
+					used = 0;
+				}
+			}
+
+			if (runfiles.isEmpty()) {
+				buffer.save(outpath);
+				return;
+			}
+			if (used > 0) {
+				runfiles.add(spill(buffer, tempdir, runfiles.size()));
+			}
+			buffer = null;
+
+			long start = System.nanoTime();
+			merge(runfiles, documents, outpath);
+			mergeNanos = System.nanoTime() - start;
+		} finally {
+			for (Path run : runfiles) {
+				Files.deleteIfExists(run);
+			}
+			Files.deleteIfExists(tempdir);
+		}
+	}
+
+	/**
+	 * Writes the buffer to a run file.
+	 *
+	 * @param buffer
+	 *            - words parsed since the last run
+	 * @param tempdir
+	 *            - directory for run files
+	 * @param run
+	 *            - number of the run
+	 * @return run file
+	 * @throws IOException
+	 *             if the run cannot be written
+	 */
+	private Path spill(InvertedIndex buffer, Path tempdir, int run) throws IOException {
+		Path runfile = tempdir.resolve("run" + run + ".bin");
+		buffer.save(runfile);
+		runs++;
+		spilled += Files.size(runfile);
+		logger.debug("Spilled run {} of {} bytes", run, Files.size(runfile));
+		return runfile;
+	}
+
+	/**
+	 * Merges run files into one index file, streaming the words of every run
+	 * in sorted order.
+	 *
+	 * @param runfiles
+	 *            - run files, in the order they were written
+	 * @param documents
+	 *            - document table of every run
+	 * @param outpath
+	 *            - index file to write
+	 * @throws IOException
+	 *             if a run cannot be read or the index file cannot be written
+	 */
+	private static void merge(List<Path> runfiles, DocumentTable documents, Path outpath)
+			throws IOException {
+		ArrayList<IndexFileReader> readers = new ArrayList<IndexFileReader>(runfiles.size());
+		try {
+			PriorityQueue<IndexFileReader> queue = new PriorityQueue<IndexFileReader>(
+					Comparator.comparing(IndexFileReader::getTerm));
+			for (Path runfile : runfiles) {
+				IndexFileReader reader = new IndexFileReader(runfile);
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+
+			try (IndexFileWriter writer = new IndexFileWriter(outpath)) {
+				PostingList[] lists = new PostingList[readers.size()];
+				while (!queue.isEmpty()) {
+					String term = queue.peek().getTerm();
+					int count = 0;
+					while (!queue.isEmpty() && queue.peek().getTerm().equals(term)) {
+						IndexFileReader reader = queue.poll();
+						lists[count++] = reader.getPostings(null);
+						if (reader.next()) {
+							queue.add(reader);
+						}
+					}
+					writer.writeTerm(term, count == 1 ? lists[0] : PostingList.merge(lists, count));
+				}
+				writer.writeDocuments(documents);
+			}
+		} finally {
+			for (IndexFileReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns how many files were parsed, and how many runs were spilled and
+	 * merged by the last build.
+	 *
+	 * @return summary of the build
+	 */
+	@Override
+	public String toString() {
+		return String.format("Spilled %d run(s) of %.1f MB for %d files, merged in %.3f s",
+				runs, spilled / 1048576.0, files, mergeNanos / 1e9);
+	}
+}
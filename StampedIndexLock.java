@@ -0,0 +1,97 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An {@link IndexLock} backed by a {@link StampedLock}. Besides normal read
+ * and write locks it supports optimistic reads, which let searches run without
+ * taking any lock as long as no write happens at the same time.
+ */
+public class StampedIndexLock implements IndexLock {
+
+	private final StampedLock lock;
+	private final LockCounters counters;
+
+	/**
+	 * Initializes an unlocked stamped lock.
+	 */
+	public StampedIndexLock() {
+		lock = new StampedLock();
+		counters = new LockCounters();
+	}
+
+	@Override
+	public void lockRead() {
+		if (lock.tryReadLock() != 0) {
+			counters.read(0);
+			return;
+		}
+		long start = System.nanoTime();
+		lock.readLock();
+		counters.read(Math.max(1, System.nanoTime() - start));
+	}
+
+	@Override
+	public void lockReadInterruptibly() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (lock.tryReadLock() != 0) {
+			counters.read(0);
+			return;
+		}
+		long start = System.nanoTime();
+		lock.readLockInterruptibly();
+		counters.read(Math.max(1, System.nanoTime() - start));
+	}
+
+	@Override
+	public void unlockRead() {
+		lock.tryUnlockRead();
+	}
+
+	@Override
+	public void lockWrite() {
+		if (lock.tryWriteLock() != 0) {
+			counters.write(0);
+			return;
+		}
+		long start = System.nanoTime();
+		lock.writeLock();
+		counters.write(Math.max(1, System.nanoTime() - start));
+	}
+
+	@Override
+	public void lockWriteInterruptibly() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (lock.tryWriteLock() != 0) {
+			counters.write(0);
+			return;
+		}
+		long start = System.nanoTime();
+		lock.writeLockInterruptibly();
+		counters.write(Math.max(1, System.nanoTime() - start));
+	}
+
+	@Override
+	public void unlockWrite() {
+		lock.tryUnlockWrite();
+	}
+
+	@Override
+	public long tryOptimisticRead() {
+		return lock.tryOptimisticRead();
+	}
+
+	@Override
+	public boolean validate(long stamp) {
+		boolean valid = lock.validate(stamp);
+		counters.optimisticRead(valid);
+		return valid;
+	}
+
+	@Override
+	public LockCounters getCounters() {
+		return counters;
+	}
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every work request on its own virtual thread, which suits work that
+ * mostly blocks on I/O, such as listing directories. A blocked virtual thread
+ * gives its carrier thread back, so slow listings do not hold up other work.
+ *
+ * Virtual threads need Java 21. On older runtimes this falls back to a fixed
+ * pool of daemon threads.
+ */
+public class VirtualThreadExecutor implements WorkExecutor {
+
+	private final ExecutorService service;
+	private final PendingWork pending;
+	private final boolean virtual;
+
+	/**
+	 * Creates an executor that starts a virtual thread per work request.
+	 *
+	 * @param threads
+	 *            - number of threads to use if virtual threads are not
+	 *            available
+	 */
+	public VirtualThreadExecutor(int threads) {
+		ExecutorService virtualService = virtualService();
+		this.virtual = virtualService != null;
+		this.service = virtual ? virtualService : Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pending = new PendingWork();
+	}
+
+	/**
+	 * Tests if work runs on virtual threads, or on the fallback pool.
+	 *
+	 * @return true if virtual threads are used
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	@Override
+	public void execute(Runnable r) {
+		pending.increment();
+		service.execute(() -> {
+			try {
+				r.run();
+			} catch (RuntimeException ex) {
+				System.err.println("Warning: Work queue encountered an " +
+						"exception while running.");
+			} finally {
+				pending.decrement();
+			}
+		});
+	}
+
+	@Override
+	public void finish() {
+		pending.await();
+	}
+
+	@Override
+	public void shutdown() {
+		finish();
+		service.shutdown();
+	}
+
+	/**
+	 * Creates an executor with a virtual thread per task, looked up by
+	 * reflection so the code still compiles and runs on Java 17.
+	 *
+	 * @return executor, or null if virtual threads are not available
+	 */
+	private static ExecutorService virtualService() {
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
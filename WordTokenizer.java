@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Splits text into cleaned words in a single pass over its characters,
+ * producing exactly the words {@link FileParser#parseText(String)} would, but
+ * without building lowercase copies of each line or running any regular
+ * expressions.
+ *
+ * Text can be fed in any number of chunks, a word split across two chunks is
+ * still reported once. Each word is passed to a {@link TokenHandler} together
+ * with its position, counting from 1 like {@link IndexBuilder} does.
+ */
+public class WordTokenizer {
+
+	/**
+	 * Receives each word found by a {@link WordTokenizer}.
+	 */
+	public interface TokenHandler {
+
+		/**
+		 * Called once for every word, in the order the words appear.
+		 *
+		 * @param word
+		 *            - cleaned word
+		 * @param position
+		 *            - position of the word, starting at 1
+		 */
+		public void token(String word, int position);
+	}
+
+	/**
+	 * Maps every char to the char it becomes in a cleaned word, or 0 if
+	 * {@link FileParser#cleanText(String)} turns it into a space. Built with
+	 * {@link String#toLowerCase()} so it follows the same locale rules.
+	 */
+	private static final char[] FOLD = new char[Character.MAX_VALUE + 1];
+
+	/**
+	 * The few chars that lower-case to more than one char (for example U+0130
+	 * becomes "i" plus a combining dot), mapped to their lower-case form.
+	 */
+	private static final HashMap<Character, String> EXPANSIONS = new HashMap<>();
+
+	static {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			String lower = String.valueOf((char) c).toLowerCase();
+			if (lower.length() == 1) {
+				FOLD[c] = isWordChar(lower.charAt(0)) ? lower.charAt(0) : 0;
+			} else {
+				EXPANSIONS.put((char) c, lower);
+			}
+		}
+	}
+
+	private final TokenHandler handler;
+	private char[] word;
+	private int length;
+	private int position;
+
+	/**
+	 * Creates a tokenizer that reports words to the given handler.
+	 *
+	 * @param handler
+	 *            - receives each word and its position
+	 */
+	public WordTokenizer(TokenHandler handler) {
+		this.handler = handler;
+		this.word = new char[32];
+		this.length = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * Tokenizes a chunk of text. The last word of the chunk is held back
+	 * until a separator or {@link #finish()} shows it is complete.
+	 *
+	 * @param chars
+	 *            - buffer holding the text
+	 * @param offset
+	 *            - index of the first char to read
+	 * @param count
+	 *            - number of chars to read
+	 */
+	public void feed(char[] chars, int offset, int count) {
+		int end = offset + count;
+		for (int i = offset; i < end; i++) {
+			char c = chars[i];
+			char folded = FOLD[c];
+			if (folded != 0) {
+				append(folded);
+			} else if (c < 128 || !expand(c)) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Tokenizes a chunk of text.
+	 *
+	 * @param text
+	 *            - text to tokenize
+	 * @see #feed(char[], int, int)
+	 */
+	public void feed(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			char folded = FOLD[c];
+			if (folded != 0) {
+				append(folded);
+			} else if (c < 128 || !expand(c)) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Reports the last word, if any. Call once after the final chunk.
+	 */
+	public void finish() {
+		flush();
+	}
+
+	/**
+	 * Returns the number of words reported so far.
+	 *
+	 * @return number of words
+	 */
+	public int count() {
+		return position;
+	}
+
+	/**
+	 * Tokenizes a char that lower-cases to several chars.
+	 *
+	 * @param c
+	 *            - char to look up
+	 * @return false if the char has no expansion and is simply a separator
+	 */
+	private boolean expand(char c) {
+		String lower = EXPANSIONS.get(c);
+		if (lower == null) {
+			return false;
+		}
+		for (int i = 0; i < lower.length(); i++) {
+			char folded = FOLD[lower.charAt(i)];
+			if (folded != 0) {
+				append(folded);
+			} else {
+				flush();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a char to the word being built.
+	 *
+	 * @param c
+	 *            - cleaned char
+	 */
+	private void append(char c) {
+		if (length == word.length) {
+			word = Arrays.copyOf(word, length * 2);
+		}
+		word[length++] = c;
+	}
+
+	/**
+	 * Reports the word being built, if any, and starts a new one.
+	 */
+	private void flush() {
+		if (length > 0) {
+			position++;
+			handler.token(new String(word, 0, length), position);
+			length = 0;
+		}
+	}
+
+	/**
+	 * Tests if a char is kept by {@link FileParser#cleanText(String)}, which
+	 * keeps only ASCII letters and digits.
+	 *
+	 * @param c
+	 *            - lower-cased char
+	 * @return true if the char is part of a word
+	 */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Runs work requests in the background and waits for them to finish. Work
+ * requests may submit more work, for example a directory listing that submits
+ * one request per file, and {@link #finish()} waits for that work as well.
+ *
+ * Implementations differ in how work is handed to threads: a single shared
+ * queue, per-thread deques with work stealing, or a thread per request.
+ */
+public interface WorkExecutor {
+
+	/** Name of the original shared queue, see {@link WorkQueue}. */
+	public static final String QUEUE = "queue";
+
+	/** Name of the work-stealing pool, see {@link ForkJoinExecutor}. */
+	public static final String FORKJOIN = "forkjoin";
+
+	/** Name of the thread per request executor, see {@link VirtualThreadExecutor}. */
+	public static final String VIRTUAL = "virtual";
+
+	/**
+	 * Adds a work request. A thread will run it when available.
+	 *
+	 * @param r
+	 *            - work request
+	 */
+	public void execute(Runnable r);
+
+	/**
+	 * Waits until every work request added so far, and every request those
+	 * added in turn, has finished.
+	 */
+	public void finish();
+
+	/**
+	 * Waits for pending work to finish, then stops the threads. Calling it
+	 * more than once has no further effect.
+	 */
+	public void shutdown();
+
+	/**
+	 * Creates an executor by name.
+	 *
+	 * @param mode
+	 *            - one of {@link #QUEUE}, {@link #FORKJOIN} or {@link #VIRTUAL}
+	 * @param threads
+	 *            - number of worker threads
+	 * @return new executor
+	 * @throws IllegalArgumentException
+	 *             if the mode is not known
+	 */
+	public static WorkExecutor create(String mode, int threads) {
+		switch (mode) {
+		case QUEUE:
+			return new WorkQueue(threads);
+		case FORKJOIN:
+			return new ForkJoinExecutor(threads);
+		case VIRTUAL:
+			return new VirtualThreadExecutor(threads);
+		default:
+			throw new IllegalArgumentException("Unknown executor mode: " + mode);
+		}
+	}
+}
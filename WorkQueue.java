@@ -2,11 +2,12 @@ import java.util.LinkedList;
 
 /**
  * A simple work queue implementation based on the IBM developerWorks article
- * by Brian Goetz.
+ * by Brian Goetz. All threads share one queue, so adding work only wakes up a
+ * single waiting worker.
  *
  * @see <a href="http://www.ibm.com/developerworks/library/j-jtp0730/index.html">Java Theory and Practice: Thread Pools and Work Queues</a>
  */
-public class WorkQueue {
+public class WorkQueue implements WorkExecutor {
 
 	/** Pool of worker threads that will wait in the background until work is available. */
 	private final PoolWorker[] workers;
@@ -14,6 +15,9 @@ public class WorkQueue {
 	/** Queue of pending work requests. */
 	private final LinkedList<Runnable> queue;
 
+	/** Work requests that were added but have not finished yet. */
+	private final PendingWork pending;
+
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
 
@@ -36,6 +40,7 @@ public class WorkQueue {
 	public WorkQueue(int threads) {
 		this.queue   = new LinkedList<Runnable>();
 		this.workers = new PoolWorker[threads];
+		this.pending = new PendingWork();
 
 		shutdown = false;
 
@@ -52,18 +57,27 @@ public class WorkQueue {
 	 *
 	 * @param r work request (in the form of a {@link Runnable} object)
 	 */
+	@Override
 	public void execute(Runnable r) {
+		pending.increment();
 		synchronized (queue) {
 			queue.addLast(r);
-			queue.notifyAll();
+			queue.notify();
 		}
 	}
 
+	@Override
+	public void finish() {
+		pending.await();
+	}
+
 	/**
-	 * Asks the queue to shutdown. Any unprocessed work will not be finished,
-	 * but threads in-progress will not be interrupted.
+	 * Waits for pending work to finish, then asks the queue to shutdown.
+	 * Threads in-progress will not be interrupted.
 	 */
+	@Override
 	public void shutdown() {
+		finish();
 		shutdown = true;
 
 		synchronized (queue) {
@@ -120,6 +134,9 @@ public class WorkQueue {
 					System.err.println("Warning: Work queue encountered an " +
 							"exception while running.");
 				}
+				finally {
+					pending.decrement();
+				}
 			}
 		}
 	}
@@ -0,0 +1,166 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link IndexLock} that lets waiting writers go before new readers, so a
+ * steady stream of searches cannot starve a build. Readers and writers wait on
+ * separate conditions, and an unlock only wakes the threads that can actually
+ * proceed: one writer if any are waiting, otherwise all waiting readers.
+ *
+ * The lock is not fair. Waiting writers take it in no particular order, and
+ * readers wait as long as any writer is waiting, so a steady stream of writes
+ * can hold searches back indefinitely. {@link PhaseFairLock} bounds the wait
+ * of both sides.
+ */
+public class WriterPreferringLock implements IndexLock {
+
+	private final ReentrantLock mutex;
+	private final Condition readable;
+	private final Condition writable;
+	private final LockCounters counters;
+	private int readers;
+	private int writers;
+	private int waitingWriters;
+
+	/**
+	 * Initializes an unlocked writer-preferring lock.
+	 */
+	public WriterPreferringLock() {
+		mutex = new ReentrantLock();
+		readable = mutex.newCondition();
+		writable = mutex.newCondition();
+		counters = new LockCounters();
+		readers = 0;
+		writers = 0;
+		waitingWriters = 0;
+	}
+
+	@Override
+	public void lockRead() {
+		mutex.lock();
+		try {
+			long waited = 0;
+			if (writers > 0 || waitingWriters > 0) {
+				long start = System.nanoTime();
+				while (writers > 0 || waitingWriters > 0) {
+					readable.awaitUninterruptibly();
+				}
+				waited = Math.max(1, System.nanoTime() - start);
+			}
+			readers++;
+			counters.read(waited);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockReadInterruptibly() throws InterruptedException {
+		mutex.lockInterruptibly();
+		try {
+			long waited = 0;
+			if (writers > 0 || waitingWriters > 0) {
+				long start = System.nanoTime();
+				while (writers > 0 || waitingWriters > 0) {
+					readable.await();
+				}
+				waited = Math.max(1, System.nanoTime() - start);
+			}
+			readers++;
+			counters.read(waited);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlockRead() {
+		mutex.lock();
+		try {
+			if (readers > 0) {
+				readers--;
+				if (readers == 0 && waitingWriters > 0) {
+					writable.signal();
+				}
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockWrite() {
+		mutex.lock();
+		try {
+			long waited = 0;
+			if (writers > 0 || readers > 0) {
+				long start = System.nanoTime();
+				waitingWriters++;
+				while (writers > 0 || readers > 0) {
+					writable.awaitUninterruptibly();
+				}
+				waitingWriters--;
+				waited = Math.max(1, System.nanoTime() - start);
+			}
+			writers++;
+			counters.write(waited);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void lockWriteInterruptibly() throws InterruptedException {
+		mutex.lockInterruptibly();
+		try {
+			long waited = 0;
+			if (writers > 0 || readers > 0) {
+				long start = System.nanoTime();
+				waitingWriters++;
+				try {
+					while (writers > 0 || readers > 0) {
+						writable.await();
+					}
+				} catch (InterruptedException e) {
+					waitingWriters--;
+					// pass on a signal this writer may have taken, and let
+					// readers in if they were only held back by this writer
+					if (writers == 0 && readers == 0 && waitingWriters > 0) {
+						writable.signal();
+					} else if (writers == 0 && waitingWriters == 0) {
+						readable.signalAll();
+					}
+					throw e;
+				}
+				waitingWriters--;
+				waited = Math.max(1, System.nanoTime() - start);
+			}
+			writers++;
+			counters.write(waited);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public void unlockWrite() {
+		mutex.lock();
+		try {
+			if (writers > 0) {
+				writers--;
+				if (waitingWriters > 0) {
+					writable.signal();
+				} else {
+					readable.signalAll();
+				}
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	@Override
+	public LockCounters getCounters() {
+		return counters;
+	}
+}
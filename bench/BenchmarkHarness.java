@@ -0,0 +1,103 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import benchmarks.IndexHarness;
+
+/**
+ * Implements {@link IndexHarness} for the JMH benchmarks, which cannot refer
+ * to classes in the default package themselves.
+ */
+public class BenchmarkHarness implements IndexHarness {
+
+	/** Receives tokenized words so the JIT cannot skip producing them. */
+	private long checksum;
+
+	@Override
+	public String cleanText(String text) {
+		return FileParser.cleanText(text);
+	}
+
+	@Override
+	public List<String> parseText(String text) {
+		return FileParser.parseText(text);
+	}
+
+	@Override
+	public int tokenize(char[] chars) {
+		WordTokenizer tokenizer = new WordTokenizer((word, position) -> checksum += word.length());
+		for (int offset = 0; offset < chars.length; offset += 8192) {
+			tokenizer.feed(chars, offset, Math.min(8192, chars.length - offset));
+		}
+		tokenizer.finish();
+		return tokenizer.count();
+	}
+
+	@Override
+	public Object newIndex(Object shared) {
+		if (shared == null) {
+			return new InvertedIndex();
+		}
+		return new InvertedIndex(((InvertedIndex) shared).getDocuments());
+	}
+
+	@Override
+	public int addDocument(Object index, String path) {
+		return ((InvertedIndex) index).getDocuments().add(path);
+	}
+
+	@Override
+	public void add(Object index, String word, int document, int position) {
+		((InvertedIndex) index).add(word, document, position);
+	}
+
+	@Override
+	public void addAll(Object index, List<Object> others, int threads) {
+		ArrayList<InvertedIndex> indexes = new ArrayList<InvertedIndex>(others.size());
+		for (Object other : others) {
+			indexes.add((InvertedIndex) other);
+		}
+		((InvertedIndex) index).addAll(indexes, threads);
+	}
+
+	@Override
+	public void build(Object index, List<Path> files) {
+		IndexBuilder.build((InvertedIndex) index, new ArrayList<Path>(files));
+	}
+
+	@Override
+	public void setPrefixLength(Object index, int length) {
+		((InvertedIndex) index).setPrefixLength(length);
+	}
+
+	@Override
+	public void setPrefixCacheSize(Object index, int prefixes) {
+		((InvertedIndex) index).setPrefixCacheSize(prefixes);
+	}
+
+	@Override
+	public List<?> search(Object index, List<String> queryWords, int k) {
+		return ((InvertedIndex) index).search(queryWords, k);
+	}
+
+	@Override
+	public List<?> exactSearch(Object index, List<String> queryWords, int k) {
+		return ((InvertedIndex) index).exactSearch(queryWords, k);
+	}
+
+	@Override
+	public List<?> rankedSearch(Object index, List<String> queryWords, int k) {
+		return ((InvertedIndex) index).rankedSearch(queryWords, false, k);
+	}
+
+	@Override
+	public List<?> allSearch(Object index, List<String> queryWords, int k) {
+		BooleanQuery query = BooleanQuery.parse(String.join(" AND ", queryWords) + " AND");
+		return ((InvertedIndex) index).search(query, false, false, k);
+	}
+
+	@Override
+	public void print(Object index, String outpath) {
+		((InvertedIndex) index).print(outpath);
+	}
+}
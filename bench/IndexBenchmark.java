@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Small stand-alone benchmark comparing the heap used by the original nested
+ * TreeMap index against {@link InvertedIndex} on a synthetic corpus.
+ *
+ * Run with: java IndexBenchmark [documents] [words per document] [vocabulary]
+ */
+public class IndexBenchmark {
+
+	/**
+	 * Builds the same synthetic corpus into both index layouts and prints the
+	 * retained heap per word occurrence for each.
+	 *
+	 * @param args
+	 *            - optional document count, words per document and vocabulary
+	 *            size
+	 */
+	public static void main(String[] args) {
+		int documents = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int words = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int vocabulary = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		long occurrences = (long) documents * words;
+
+		String[] dictionary = dictionary(vocabulary);
+
+		long before = usedHeap();
+		TreeMap<String, TreeMap<String, ArrayList<Integer>>> legacy = buildLegacy(
+				dictionary, documents, words);
+		long legacyBytes = usedHeap() - before;
+		System.out.println("legacy words: " + legacy.size());
+		legacy = null;
+
+		before = usedHeap();
+		InvertedIndex index = buildIndex(dictionary, documents, words);
+		long indexBytes = usedHeap() - before;
+		System.out.println("documents with \"" + dictionary[0] + "\": "
+				+ index.search(List.of(dictionary[0])).size());
+
+		System.out.printf("occurrences:            %d%n", occurrences);
+		System.out.printf("legacy bytes/occurrence: %.2f%n", (double) legacyBytes / occurrences);
+		System.out.printf("index bytes/occurrence:  %.2f%n", (double) indexBytes / occurrences);
+		System.out.printf("reduction:               %.2fx%n", (double) legacyBytes / indexBytes);
+	}
+
+	/**
+	 * Creates a vocabulary of random lower-case words.
+	 *
+	 * @param size
+	 *            - number of words
+	 * @return words
+	 */
+	private static String[] dictionary(int size) {
+		Random random = new Random(42);
+		String[] words = new String[size];
+		for (int i = 0; i < size; i++) {
+			char[] chars = new char[3 + random.nextInt(8)];
+			for (int c = 0; c < chars.length; c++) {
+				chars[c] = (char) ('a' + random.nextInt(26));
+			}
+			words[i] = new String(chars);
+		}
+		return words;
+	}
+
+	/**
+	 * Picks a word with a skewed distribution so a few words are very common,
+	 * similar to natural text.
+	 *
+	 * @param random
+	 *            - random source
+	 * @param dictionary
+	 *            - vocabulary
+	 * @return word
+	 */
+	private static String pick(Random random, String[] dictionary) {
+		double skew = random.nextDouble();
+		return dictionary[(int) (skew * skew * skew * dictionary.length)];
+	}
+
+	/**
+	 * Returns a path similar in length to the paths found in a real corpus.
+	 *
+	 * @param document
+	 *            - document number
+	 * @return path
+	 */
+	private static String path(int document) {
+		return "/home/public/cs212/input/index/gutenberg/" + document + "/document" + document + ".txt";
+	}
+
+	/**
+	 * Builds the corpus into the original nested TreeMap layout.
+	 */
+	private static TreeMap<String, TreeMap<String, ArrayList<Integer>>> buildLegacy(
+			String[] dictionary, int documents, int words) {
+		Random random = new Random(7);
+		TreeMap<String, TreeMap<String, ArrayList<Integer>>> index = new TreeMap<>();
+		for (int d = 0; d < documents; d++) {
+			String path = path(d);
+			for (int w = 1; w <= words; w++) {
+				index.computeIfAbsent(pick(random, dictionary), k -> new TreeMap<>())
+						.computeIfAbsent(path, k -> new ArrayList<>()).add(w);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Builds the corpus into an {@link InvertedIndex} the same way
+	 * {@link IndexBuilder} does, one file index merged at a time.
+	 */
+	private static InvertedIndex buildIndex(String[] dictionary, int documents, int words) {
+		Random random = new Random(7);
+		InvertedIndex index = new InvertedIndex();
+		for (int d = 0; d < documents; d++) {
+			int document = index.getDocuments().add(path(d));
+			InvertedIndex fileindex = new InvertedIndex(index.getDocuments());
+			for (int w = 1; w <= words; w++) {
+				fileindex.add(pick(random, dictionary), document, w);
+			}
+			index.addAll(fileindex);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the heap in use after asking for a few garbage collections.
+	 *
+	 * @return used heap in bytes
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Small stand-alone benchmark comparing the words per second of the regex
+ * based {@link FileParser#cleanText(String)} path against
+ * {@link WordTokenizer} on synthetic text.
+ *
+ * Run with: java TokenizerBenchmark [lines] [rounds]
+ */
+public class TokenizerBenchmark {
+
+	/** Receives words so the JIT cannot skip producing them. */
+	private static long checksum;
+
+	/**
+	 * Tokenizes the same synthetic text with both approaches and prints the
+	 * words per second of each.
+	 *
+	 * @param args
+	 *            - optional number of lines and number of timed rounds
+	 */
+	public static void main(String[] args) {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		ArrayList<String> text = text(lines);
+		char[] chars = String.join("\n", text).toCharArray();
+
+		long words = 0;
+		long regexNanos = Long.MAX_VALUE;
+		long tokenizerNanos = Long.MAX_VALUE;
+		for (int round = 0; round < rounds + 2; round++) {
+			long start = System.nanoTime();
+			words = regex(text);
+			regexNanos = Math.min(regexNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			long tokenized = tokenizer(chars);
+			tokenizerNanos = Math.min(tokenizerNanos, System.nanoTime() - start);
+
+			if (tokenized != words) {
+				throw new IllegalStateException("Word counts differ: " + words + " vs " + tokenized);
+			}
+		}
+
+		System.out.printf("words:                %d%n", words);
+		System.out.printf("cleanText words/sec:  %.0f%n", words / (regexNanos / 1e9));
+		System.out.printf("tokenizer words/sec:  %.0f%n", words / (tokenizerNanos / 1e9));
+		System.out.printf("speed up:             %.2fx%n", (double) regexNanos / tokenizerNanos);
+		System.out.println("checksum: " + checksum);
+	}
+
+	/**
+	 * Creates lines of mixed case words, punctuation and the occasional
+	 * non-ASCII character, similar to the text files being indexed.
+	 *
+	 * @param lines
+	 *            - number of lines
+	 * @return lines of text
+	 */
+	private static ArrayList<String> text(int lines) {
+		String[] separators = { " ", " ", " ", ", ", ". ", "  ", "\t", "_", "-", "\u00e9 " };
+		Random random = new Random(11);
+		ArrayList<String> text = new ArrayList<>(lines);
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			line.setLength(0);
+			int words = random.nextInt(14);
+			for (int w = 0; w < words; w++) {
+				int length = 1 + random.nextInt(9);
+				for (int c = 0; c < length; c++) {
+					char letter = (char) ('a' + random.nextInt(26));
+					line.append(random.nextInt(8) == 0 ? Character.toUpperCase(letter) : letter);
+				}
+				line.append(separators[random.nextInt(separators.length)]);
+			}
+			text.add(line.toString());
+		}
+		return text;
+	}
+
+	/**
+	 * Splits each line the way {@link IndexBuilder} used to, with
+	 * {@link FileParser#cleanText(String)} and a regex split.
+	 *
+	 * @param text
+	 *            - lines of text
+	 * @return number of words
+	 */
+	private static long regex(ArrayList<String> text) {
+		long words = 0;
+		for (String line : text) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			for (String w : FileParser.cleanText(line).split("\\s")) {
+				if (w.length() > 0) {
+					checksum += w.length();
+					words++;
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Splits the text with a {@link WordTokenizer} in 8K chunks, the way
+	 * {@link IndexBuilder} reads files.
+	 *
+	 * @param chars
+	 *            - text
+	 * @return number of words
+	 */
+	private static long tokenizer(char[] chars) {
+		WordTokenizer tokenizer = new WordTokenizer((word, position) -> checksum += word.length());
+		for (int offset = 0; offset < chars.length; offset += 8192) {
+			tokenizer.feed(chars, offset, Math.min(8192, chars.length - offset));
+		}
+		tokenizer.finish();
+		return tokenizer.count();
+	}
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to fill an index one word at a time with InvertedIndex.add, and to
+ * merge per-thread shards holding the same words with InvertedIndex.addAll,
+ * on one thread or split into word ranges merged in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddBenchmark {
+
+	/** Number of documents. */
+	@Param({ "200" })
+	public int documents;
+
+	/** Number of words in each document. */
+	@Param({ "2000" })
+	public int words;
+
+	/** Number of distinct words. */
+	@Param({ "20000" })
+	public int vocabulary;
+
+	/** Number of shards the documents are spread over for addAll. */
+	@Param({ "4" })
+	public int shards;
+
+	/** Number of threads merging the shards in addAll. */
+	@Param({ "1", "4" })
+	public int mergeThreads;
+
+	private IndexHarness harness;
+	private Corpus corpus;
+	private Object master;
+	private ArrayList<Object> built;
+
+	/**
+	 * Generates the corpus and builds the shards.
+	 */
+	@Setup
+	public void setup() {
+		harness = IndexHarness.load();
+		corpus = new Corpus(documents, words, vocabulary, 1);
+
+		master = harness.newIndex(null);
+		built = new ArrayList<Object>(shards);
+		for (int s = 0; s < shards; s++) {
+			built.add(harness.newIndex(master));
+		}
+		for (int d = 0; d < documents; d++) {
+			fill(built.get(d % shards), d);
+		}
+	}
+
+	/**
+	 * Adds every word of the corpus to a new index.
+	 *
+	 * @return index
+	 */
+	@Benchmark
+	public Object add() {
+		Object index = harness.newIndex(null);
+		for (int d = 0; d < documents; d++) {
+			fill(index, d);
+		}
+		return index;
+	}
+
+	/**
+	 * Merges the shards into a new index.
+	 *
+	 * @return index
+	 */
+	@Benchmark
+	public Object addAll() {
+		Object index = harness.newIndex(master);
+		harness.addAll(index, built, mergeThreads);
+		return index;
+	}
+
+	/**
+	 * Adds every word of one document to an index.
+	 *
+	 * @param index
+	 *            - index to add to
+	 * @param document
+	 *            - document of the corpus
+	 */
+	private void fill(Object index, int document) {
+		String[] dictionary = corpus.vocabulary();
+		int id = harness.addDocument(index, "doc" + document + ".txt");
+		int[] text = corpus.words(document);
+		for (int w = 0; w < text.length; w++) {
+			harness.add(index, dictionary[text[w]], id, w + 1);
+		}
+	}
+}
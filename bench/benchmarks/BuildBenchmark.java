@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for IndexBuilder.build to read, tokenize and index a directory of text
+ * files written to a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+
+	/** Number of files. */
+	@Param({ "200" })
+	public int documents;
+
+	/** Number of words in each file. */
+	@Param({ "2000" })
+	public int words;
+
+	/** Number of distinct words. */
+	@Param({ "20000" })
+	public int vocabulary;
+
+	private IndexHarness harness;
+	private Path directory;
+	private List<Path> files;
+
+	/**
+	 * Writes the corpus to a temporary directory.
+	 *
+	 * @throws IOException
+	 *             if the files cannot be written
+	 */
+	@Setup
+	public void setup() throws IOException {
+		harness = IndexHarness.load();
+		directory = Files.createTempDirectory("index-bench");
+		files = new Corpus(documents, words, vocabulary, 1).write(directory);
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 *
+	 * @throws IOException
+	 *             if the files cannot be deleted
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		Corpus.delete(directory);
+	}
+
+	/**
+	 * Builds a new index from every file.
+	 *
+	 * @return index
+	 */
+	@Benchmark
+	public Object build() {
+		Object index = harness.newIndex(null);
+		harness.build(index, files);
+		return index;
+	}
+}
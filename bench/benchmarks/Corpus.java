@@ -0,0 +1,156 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic corpus for the benchmarks. Every run with the same parameters
+ * produces exactly the same documents.
+ *
+ * Words are drawn from a vocabulary of random lower-case words of 3 to 10
+ * letters with a skewed distribution, so a few words are very common and most
+ * are rare, as in real text. Prefixes of 1, 2 and 3 letters therefore match
+ * about 1/26, 1/676 and 1/17576 of the vocabulary. The text of each document
+ * mixes in upper case letters, punctuation and line breaks for the parsers to
+ * clean up.
+ */
+public class Corpus {
+
+	private static final String[] SEPARATORS = { " ", " ", " ", " ", ", ", ". ", "; ", "-", "_", "\t" };
+
+	private final String[] vocabulary;
+	private final int[][] words;
+	private final String[] texts;
+
+	/**
+	 * Generates a corpus.
+	 *
+	 * @param documents
+	 *            - number of documents
+	 * @param length
+	 *            - number of words in each document
+	 * @param vocabulary
+	 *            - number of distinct words to draw from
+	 * @param seed
+	 *            - seed of the random generator
+	 */
+	public Corpus(int documents, int length, int vocabulary, long seed) {
+		Random random = new Random(seed);
+		this.vocabulary = new String[vocabulary];
+		for (int i = 0; i < vocabulary; i++) {
+			char[] chars = new char[3 + random.nextInt(8)];
+			for (int c = 0; c < chars.length; c++) {
+				chars[c] = (char) ('a' + random.nextInt(26));
+			}
+			this.vocabulary[i] = new String(chars);
+		}
+
+		this.words = new int[documents][length];
+		this.texts = new String[documents];
+		StringBuilder text = new StringBuilder();
+		for (int d = 0; d < documents; d++) {
+			text.setLength(0);
+			for (int w = 0; w < length; w++) {
+				double skew = random.nextDouble();
+				int word = (int) (vocabulary * skew * skew * skew);
+				words[d][w] = word;
+
+				String spelling = this.vocabulary[word];
+				if (random.nextInt(10) == 0) {
+					spelling = Character.toUpperCase(spelling.charAt(0)) + spelling.substring(1);
+				}
+				text.append(spelling);
+				text.append(w % 12 == 11 ? "\n" : SEPARATORS[random.nextInt(SEPARATORS.length)]);
+			}
+			texts[d] = text.toString();
+		}
+	}
+
+	/**
+	 * Returns the number of documents.
+	 *
+	 * @return number of documents
+	 */
+	public int documents() {
+		return texts.length;
+	}
+
+	/**
+	 * Returns the vocabulary the words are drawn from.
+	 *
+	 * @return lower-case words
+	 */
+	public String[] vocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * Returns the cleaned words of a document, in order.
+	 *
+	 * @param document
+	 *            - index of the document
+	 * @return indexes into {@link #vocabulary()}
+	 */
+	public int[] words(int document) {
+		return words[document];
+	}
+
+	/**
+	 * Returns the raw text of a document.
+	 *
+	 * @param document
+	 *            - index of the document
+	 * @return text with mixed case, punctuation and line breaks
+	 */
+	public String text(int document) {
+		return texts[document];
+	}
+
+	/**
+	 * Writes every document to its own .txt file, spread over a few
+	 * sub-directories.
+	 *
+	 * @param directory
+	 *            - directory to write to
+	 * @return files written
+	 * @throws IOException
+	 *             if a file cannot be written
+	 */
+	public List<Path> write(Path directory) throws IOException {
+		ArrayList<Path> files = new ArrayList<Path>(texts.length);
+		for (int d = 0; d < texts.length; d++) {
+			Path sub = directory.resolve("d" + (d % 10));
+			Files.createDirectories(sub);
+			Path file = sub.resolve("doc" + d + ".txt");
+			Files.write(file, texts[d].getBytes(StandardCharsets.UTF_8));
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Deletes a directory and everything in it.
+	 *
+	 * @param directory
+	 *            - directory to delete
+	 * @throws IOException
+	 *             if something cannot be deleted
+	 */
+	public static void delete(Path directory) throws IOException {
+		if (directory == null || !Files.exists(directory)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+}
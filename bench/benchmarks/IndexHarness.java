@@ -0,0 +1,197 @@
+package benchmarks;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Calls into the index classes on behalf of the benchmarks. JMH only accepts
+ * benchmark classes in a named package, and Java does not let a named package
+ * refer to the default package the index classes live in, so the benchmarks go
+ * through this interface instead. It is implemented by BenchmarkHarness in the
+ * default package, which is the only implementation loaded, so the JIT inlines
+ * every call.
+ *
+ * Indexes are passed around as plain objects.
+ */
+public interface IndexHarness {
+
+	/**
+	 * Loads the implementation in the default package.
+	 *
+	 * @return harness
+	 */
+	public static IndexHarness load() {
+		try {
+			return (IndexHarness) Class.forName("BenchmarkHarness").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to load BenchmarkHarness", e);
+		}
+	}
+
+	/**
+	 * Calls FileParser.cleanText.
+	 *
+	 * @param text
+	 *            - original text
+	 * @return cleaned text
+	 */
+	public String cleanText(String text);
+
+	/**
+	 * Calls FileParser.parseText.
+	 *
+	 * @param text
+	 *            - original text
+	 * @return cleaned words
+	 */
+	public List<String> parseText(String text);
+
+	/**
+	 * Splits text with a WordTokenizer, fed in chunks the size IndexBuilder
+	 * reads.
+	 *
+	 * @param chars
+	 *            - text
+	 * @return number of words
+	 */
+	public int tokenize(char[] chars);
+
+	/**
+	 * Creates an empty InvertedIndex.
+	 *
+	 * @param shared
+	 *            - index whose document table the new index shares, or null
+	 *            for a new table
+	 * @return index
+	 */
+	public Object newIndex(Object shared);
+
+	/**
+	 * Adds a document to the document table of an index.
+	 *
+	 * @param index
+	 *            - index
+	 * @param path
+	 *            - path of the document
+	 * @return document id
+	 */
+	public int addDocument(Object index, String path);
+
+	/**
+	 * Calls InvertedIndex.add with a document id.
+	 *
+	 * @param index
+	 *            - index
+	 * @param word
+	 *            - cleaned word
+	 * @param document
+	 *            - document id
+	 * @param position
+	 *            - position of the word
+	 */
+	public void add(Object index, String word, int document, int position);
+
+	/**
+	 * Calls InvertedIndex.addAll with several indexes.
+	 *
+	 * @param index
+	 *            - index to add to
+	 * @param others
+	 *            - indexes sharing its document table
+	 * @param threads
+	 *            - number of word ranges to merge at once
+	 */
+	public void addAll(Object index, List<Object> others, int threads);
+
+	/**
+	 * Calls IndexBuilder.build on a list of files.
+	 *
+	 * @param index
+	 *            - index to add to
+	 * @param files
+	 *            - text files
+	 */
+	public void build(Object index, List<Path> files);
+
+	/**
+	 * Calls InvertedIndex.setPrefixLength.
+	 *
+	 * @param index
+	 *            - index
+	 * @param length
+	 *            - longest prefix to precompute, or 0 for none
+	 */
+	public void setPrefixLength(Object index, int length);
+
+	/**
+	 * Calls InvertedIndex.setPrefixCacheSize.
+	 *
+	 * @param index
+	 *            - index
+	 * @param prefixes
+	 *            - largest number of prefixes cached, or 0 for none
+	 */
+	public void setPrefixCacheSize(Object index, int prefixes);
+
+	/**
+	 * Calls InvertedIndex.search.
+	 *
+	 * @param index
+	 *            - index
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return sorted search results
+	 */
+	public List<?> search(Object index, List<String> queryWords, int k);
+
+	/**
+	 * Calls InvertedIndex.exactSearch.
+	 *
+	 * @param index
+	 *            - index
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return sorted search results
+	 */
+	public List<?> exactSearch(Object index, List<String> queryWords, int k);
+
+	/**
+	 * Calls InvertedIndex.rankedSearch.
+	 *
+	 * @param index
+	 *            - index
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return ranked search results
+	 */
+	public List<?> rankedSearch(Object index, List<String> queryWords, int k);
+
+	/**
+	 * Calls InvertedIndex.search with a query that requires every word.
+	 *
+	 * @param index
+	 *            - index
+	 * @param queryWords
+	 *            - cleaned query words
+	 * @param k
+	 *            - largest number of results to return
+	 * @return sorted search results
+	 */
+	public List<?> allSearch(Object index, List<String> queryWords, int k);
+
+	/**
+	 * Calls InvertedIndex.print.
+	 *
+	 * @param index
+	 *            - index
+	 * @param outpath
+	 *            - file to write
+	 */
+	public void print(Object index, String outpath);
+}
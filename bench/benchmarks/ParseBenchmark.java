@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time to split a document into cleaned words, line by line with
+ * FileParser.cleanText and FileParser.parseText, and in one pass with a
+ * WordTokenizer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	/** Number of words in the document. */
+	@Param({ "10000" })
+	public int words;
+
+	private IndexHarness harness;
+	private String[] lines;
+	private char[] chars;
+
+	/**
+	 * Generates the document.
+	 */
+	@Setup
+	public void setup() {
+		harness = IndexHarness.load();
+		String text = new Corpus(1, words, 20000, 1).text(0);
+		lines = text.split("\n");
+		chars = text.toCharArray();
+	}
+
+	/**
+	 * Cleans every line with FileParser.cleanText.
+	 *
+	 * @param blackhole
+	 *            - receives the cleaned lines
+	 */
+	@Benchmark
+	public void cleanText(Blackhole blackhole) {
+		for (String line : lines) {
+			blackhole.consume(harness.cleanText(line));
+		}
+	}
+
+	/**
+	 * Splits every line into words with FileParser.parseText.
+	 *
+	 * @param blackhole
+	 *            - receives the words
+	 */
+	@Benchmark
+	public void parseText(Blackhole blackhole) {
+		for (String line : lines) {
+			blackhole.consume(harness.parseText(line));
+		}
+	}
+
+	/**
+	 * Splits the whole document with a WordTokenizer.
+	 *
+	 * @return number of words
+	 */
+	@Benchmark
+	public int tokenizer() {
+		return harness.tokenize(chars);
+	}
+}
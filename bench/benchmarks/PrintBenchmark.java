@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for InvertedIndex.print to write the whole index as text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrintBenchmark {
+
+	/** Number of documents. */
+	@Param({ "200" })
+	public int documents;
+
+	/** Number of words in each document. */
+	@Param({ "2000" })
+	public int words;
+
+	/** Number of distinct words. */
+	@Param({ "20000" })
+	public int vocabulary;
+
+	private IndexHarness harness;
+	private Object index;
+	private Path output;
+
+	/**
+	 * Builds the index.
+	 *
+	 * @throws IOException
+	 *             if the output file cannot be created
+	 */
+	@Setup
+	public void setup() throws IOException {
+		harness = IndexHarness.load();
+		Corpus corpus = new Corpus(documents, words, vocabulary, 1);
+		index = harness.newIndex(null);
+		String[] dictionary = corpus.vocabulary();
+		for (int d = 0; d < documents; d++) {
+			int id = harness.addDocument(index, "doc" + d + ".txt");
+			int[] text = corpus.words(d);
+			for (int w = 0; w < text.length; w++) {
+				harness.add(index, dictionary[text[w]], id, w + 1);
+			}
+		}
+		output = Files.createTempFile("index-bench", ".txt");
+	}
+
+	/**
+	 * Deletes the output file.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be deleted
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	/**
+	 * Prints the index.
+	 */
+	@Benchmark
+	public void print() {
+		harness.print(index, output.toString());
+	}
+}
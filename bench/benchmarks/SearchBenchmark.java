@@ -0,0 +1,160 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for InvertedIndex.search to answer a query. Every query word is a
+ * prefix of a vocabulary word, so shorter prefixes match more words: a one
+ * letter prefix fans out to about 1/26 of the vocabulary, while a prefix of 10
+ * letters is the whole word. Each call searches the next of a fixed set of
+ * random queries, with or without a prefix index precomputing the results of
+ * prefixes up to prefixIndex letters, and with or without a prefix cache
+ * keeping the aggregated postings of up to prefixCache searched prefixes
+ * that match many words. The query is searched as it is, for whole words
+ * only, ranked by BM25, or for the documents holding every query word. Only
+ * the best limit results are kept, all of them for the default limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+	/** Number of queries searched in turn. */
+	private static final int QUERIES = 256;
+
+	/** Number of documents. */
+	@Param({ "200" })
+	public int documents;
+
+	/** Number of words in each document. */
+	@Param({ "2000" })
+	public int words;
+
+	/** Number of distinct words. */
+	@Param({ "20000" })
+	public int vocabulary;
+
+	/** Letters kept of each query word. */
+	@Param({ "1", "2", "3", "10" })
+	public int prefix;
+
+	/** Words in each query. */
+	@Param({ "1", "3" })
+	public int queryWords;
+
+	/** Longest prefix precomputed by the prefix index, 0 for none. */
+	@Param({ "0", "2" })
+	public int prefixIndex;
+
+	/** Number of prefixes kept by the prefix cache, 0 for none. */
+	@Param({ "0", "256" })
+	public int prefixCache;
+
+	/** Largest number of results returned by each search. */
+	@Param({ "2147483647", "10" })
+	public int limit;
+
+	private IndexHarness harness;
+	private Object index;
+	private ArrayList<List<String>> queries;
+	private int next;
+
+	/**
+	 * Builds the index and the queries.
+	 */
+	@Setup
+	public void setup() {
+		harness = IndexHarness.load();
+		Corpus corpus = new Corpus(documents, words, vocabulary, 1);
+		index = harness.newIndex(null);
+		String[] dictionary = corpus.vocabulary();
+		for (int d = 0; d < documents; d++) {
+			int id = harness.addDocument(index, "doc" + d + ".txt");
+			int[] text = corpus.words(d);
+			for (int w = 0; w < text.length; w++) {
+				harness.add(index, dictionary[text[w]], id, w + 1);
+			}
+		}
+
+		harness.setPrefixLength(index, prefixIndex);
+		harness.setPrefixCacheSize(index, prefixCache);
+
+		Random random = new Random(7);
+		queries = new ArrayList<List<String>>(QUERIES);
+		for (int q = 0; q < QUERIES; q++) {
+			ArrayList<String> query = new ArrayList<String>(queryWords);
+			for (int w = 0; w < queryWords; w++) {
+				String word = dictionary[random.nextInt(dictionary.length)];
+				query.add(word.substring(0, Math.min(prefix, word.length())));
+			}
+			queries.add(query);
+		}
+		next = 0;
+	}
+
+	/**
+	 * Searches the next query.
+	 *
+	 * @return sorted results
+	 */
+	@Benchmark
+	public List<?> search() {
+		List<String> query = queries.get(next);
+		next = (next + 1) % QUERIES;
+		return harness.search(index, query, limit);
+	}
+
+	/**
+	 * Searches the next query for whole words only.
+	 *
+	 * @return sorted results
+	 */
+	@Benchmark
+	public List<?> exactSearch() {
+		List<String> query = queries.get(next);
+		next = (next + 1) % QUERIES;
+		return harness.exactSearch(index, query, limit);
+	}
+
+	/**
+	 * Searches the next query and ranks the results by relevance.
+	 *
+	 * @return ranked results
+	 */
+	@Benchmark
+	public List<?> rankedSearch() {
+		List<String> query = queries.get(next);
+		next = (next + 1) % QUERIES;
+		return harness.rankedSearch(index, query, limit);
+	}
+
+	/**
+	 * Searches the next query for the documents that hold every query word.
+	 *
+	 * @return sorted results
+	 */
+	@Benchmark
+	public List<?> allSearch() {
+		List<String> query = queries.get(next);
+		next = (next + 1) % QUERIES;
+		return harness.allSearch(index, query, limit);
+	}
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+/**
+ * Checks that an {@link IndexPipeline} build finds the same words as a
+ * single-threaded build, skipping directories whose names end in .txt, and
+ * that a stage whose every thread fails stops the stages feeding it instead
+ * of leaving them blocked on a full queue. Prints each failed check and exits
+ * with status 1 if there was any.
+ */
+public class PipelineCheck {
+
+	/** Longest a build with a failed stage may take before it counts as hung. */
+	private static final long TIMEOUT_MILLIS = 10_000;
+
+	/** Number of items the producer of the failing stage tries to write. */
+	private static final int ITEMS = 1_000;
+
+	private final Path directory;
+
+	private int checks;
+	private int failures;
+
+	/**
+	 * Creates the check with a new temporary directory.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public PipelineCheck() throws IOException {
+		directory = Files.createTempDirectory("pipelinecheck");
+	}
+
+	/**
+	 * Runs every check.
+	 *
+	 * @param args
+	 *            - unused
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the stages
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		PipelineCheck check = new PipelineCheck();
+		try {
+			check.checkTraverse();
+			check.checkFailedStage();
+		} finally {
+			check.delete();
+		}
+		System.out.println(check.checks + " checks, " + check.failures + " failed");
+		if (check.failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks that a directory named like a text file is walked into rather
+	 * than given a document id, and that the pipeline finds the same words as
+	 * a single-threaded build.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	private void checkTraverse() throws IOException {
+		Path folder = Files.createDirectories(directory.resolve("folder.txt"));
+		Path inner = folder.resolve("inner.txt");
+		Path outer = directory.resolve("outer.txt");
+		Files.write(inner, "the quick brown fox".getBytes(StandardCharsets.UTF_8));
+		Files.write(outer, "the lazy dog".getBytes(StandardCharsets.UTF_8));
+
+		InvertedIndex piped = new InvertedIndex();
+		check("pipeline build succeeds", new IndexPipeline(2, 2, 2, 1).build(directory, piped));
+		DocumentTable documents = piped.getDocuments();
+		check("pipeline finds only files", documents.size() == 2);
+		check("pipeline skips a directory named .txt",
+				documents.getId(folder.toAbsolutePath().normalize().toString()) < 0);
+
+		InvertedIndex built = new InvertedIndex();
+		IndexBuilder.build(built, new ArrayList<Path>(Arrays.asList(inner.toAbsolutePath().normalize(),
+				outer.toAbsolutePath().normalize())));
+		for (String line : new String[] { "the", "quick", "dog", "missing" }) {
+			check("pipeline search \"" + line + "\"",
+					built.search(FileParser.parseText(line)).toString()
+							.equals(piped.search(FileParser.parseText(line)).toString()));
+		}
+	}
+
+	/**
+	 * Checks that a producer writing to a full queue stops once every thread
+	 * reading that queue has failed.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the stages
+	 */
+	private void checkFailedStage() throws InterruptedException {
+		BlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(1);
+		IndexPipeline.Stage producer = new IndexPipeline.Stage("produce", "items", 2, 2, queue, -1) {
+			@Override
+			protected void work() throws InterruptedException {
+				for (int i = 0; i < ITEMS; i++) {
+					queue.put(i);
+				}
+			}
+		};
+		IndexPipeline.Stage consumer = new IndexPipeline.Stage("consume", "items", 2, 0, null, null) {
+			@Override
+			protected void work() throws InterruptedException {
+				queue.take();
+				throw new IllegalStateException("consumer failed");
+			}
+		};
+		consumer.setProducer(producer);
+
+		Thread stages = new Thread(() -> {
+			producer.start();
+			consumer.start();
+			producer.join();
+			consumer.join();
+		});
+		stages.setDaemon(true);
+		stages.start();
+		stages.join(TIMEOUT_MILLIS);
+		check("producer stops after its consumer fails", !stages.isAlive());
+		check("failed consumer is reported", consumer.failed());
+		check("interrupted producer is reported", producer.failed());
+	}
+
+	/**
+	 * Counts a check, printing its name if it failed.
+	 *
+	 * @param name
+	 *            - description of the check
+	 * @param passed
+	 *            - whether the check passed
+	 * @return whether the check passed
+	 */
+	private boolean check(String name, boolean passed) {
+		checks++;
+		if (!passed) {
+			failures++;
+			System.out.println("FAILED " + name);
+		}
+		return passed;
+	}
+
+	/**
+	 * Deletes the temporary corpus.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	private void delete() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+}
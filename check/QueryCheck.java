@@ -0,0 +1,745 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Searches the same generated corpus in an {@link InvertedIndex}, a
+ * {@link SegmentedIndex} sealed into several segments and a
+ * {@link MappedIndex} saved from the first, and checks that all three return
+ * the same results for every query feature. Prints each mismatch and exits
+ * with status 1 if there was any.
+ *
+ * The corpus is drawn from a small vocabulary of words sharing prefixes with
+ * a fixed seed, so every run searches the same documents and prefixes, phrases
+ * and repeated words all match often.
+ */
+public class QueryCheck {
+
+	/** Words of the corpus, many of them prefixes of others. */
+	private static final String[] VOCABULARY = { "ca", "cat", "cats", "catalog", "car", "card", "care", "cart",
+			"do", "dog", "dogs", "door", "dot", "the", "then", "there", "quick", "quiet", "quit", "brown", "fox",
+			"jumps", "over", "lazy" };
+
+	/**
+	 * Letters of the family of words made of "cat" and two more letters, so
+	 * enough words share a prefix for the prefix cache to aggregate them.
+	 */
+	private static final String SUFFIXES = "abcdefgh";
+
+	private static final int DOCUMENTS = 40;
+	private static final long SEED = 42;
+
+	/** Segment size small enough to seal several segments from the corpus. */
+	private static final long FLUSH_BYTES = 16 << 10;
+
+	/** Largest relative difference allowed between two scores. */
+	private static final double TOLERANCE = 1e-9;
+
+	private final Path directory;
+	private final ArrayList<Path> files;
+	private final ArrayList<String[]> texts;
+
+	private final InvertedIndex inverted;
+	private final SegmentedIndex segmented;
+	private final MappedIndex mapped;
+
+	private int checks;
+	private int failures;
+
+	/**
+	 * Writes the corpus to a new temporary directory and builds the three
+	 * indexes from it.
+	 *
+	 * @throws IOException
+	 *             if the corpus or the saved index cannot be written
+	 */
+	public QueryCheck() throws IOException {
+		directory = Files.createTempDirectory("querycheck");
+		files = new ArrayList<Path>();
+		texts = new ArrayList<String[]>();
+		Random random = new Random(SEED);
+		for (int i = 0; i < DOCUMENTS; i++) {
+			String[] words = new String[20 + random.nextInt(300)];
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j < words.length; j++) {
+				words[j] = random.nextInt(4) > 0 ? VOCABULARY[random.nextInt(VOCABULARY.length)]
+						: "cat" + SUFFIXES.charAt(random.nextInt(SUFFIXES.length()))
+								+ SUFFIXES.charAt(random.nextInt(SUFFIXES.length()));
+				text.append(words[j]);
+				text.append(j % 12 == 11 ? '\n' : ' ');
+			}
+			Path file = directory.resolve(String.format("doc%02d.txt", i));
+			Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+			files.add(file);
+			texts.add(words);
+		}
+
+		inverted = new InvertedIndex();
+		IndexBuilder.build(inverted, files);
+
+		segmented = new SegmentedIndex(new DocumentTable(), FLUSH_BYTES, 2);
+		for (Path file : files) {
+			segmented.addAll(IndexBuilder.buildFile(segmented.getDocuments(), file));
+		}
+		segmented.flush();
+		segmented.awaitMerges();
+		segmented.close();
+
+		Path saved = directory.resolve("index.bin");
+		inverted.save(saved);
+		mapped = new MappedIndex(saved);
+	}
+
+	/**
+	 * Runs every check.
+	 *
+	 * @param args
+	 *            - unused
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		QueryCheck check = new QueryCheck();
+		try {
+			check.checkSearch();
+			check.checkExactUpdates();
+			check.checkRanked();
+			check.checkRankedSplit();
+			check.checkBoolean();
+			check.checkPhrases();
+			check.checkPrefixCache();
+			check.checkQueryCache();
+		} finally {
+			check.delete();
+		}
+		System.out.println(check.checks + " checks, " + check.failures + " failed");
+		if (check.failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks partial and exact search, with and without a limit.
+	 */
+	private void checkSearch() {
+		for (String line : new String[] { "cat", "ca", "c", "cat dog", "ca cat", "cat cat", "do the quick",
+				"missing", "car missing" }) {
+			List<String> query = FileParser.parseText(line);
+			for (int k : new int[] { Integer.MAX_VALUE, 5 }) {
+				compare("search \"" + line + "\" k=" + k, inverted.search(query, k), segmented.search(query, k),
+						mapped.search(query, k));
+				compare("exact search \"" + line + "\" k=" + k, inverted.exactSearch(query, k),
+						segmented.exactSearch(query, k), mapped.exactSearch(query, k));
+			}
+		}
+	}
+
+	/**
+	 * Checks that exact searches, which look words up in a hash kept next to
+	 * the sorted words, still find every word after documents are removed,
+	 * merged back in on several threads and loaded from a saved index, and
+	 * that saving an index leaves out the ids of removed documents.
+	 *
+	 * @throws IOException
+	 *             if the index cannot be saved or loaded
+	 */
+	private void checkExactUpdates() throws IOException {
+		String[] lines = { "cat", "cat dog", "catalog", "catah cathh", "lazy fox", "missing" };
+		InvertedIndex updated = new InvertedIndex();
+		IndexBuilder.build(updated, files);
+		InvertedIndex kept = new InvertedIndex();
+		IndexBuilder.build(kept, new ArrayList<Path>(files.subList(DOCUMENTS / 2, DOCUMENTS)));
+
+		BitSet removed = new BitSet();
+		removed.set(0, DOCUMENTS / 2);
+		updated.removeAll(removed);
+		checkExact("exact search after removing documents", kept, updated, lines);
+
+		Path compacted = directory.resolve("removed.bin");
+		updated.save(compacted);
+		InvertedIndex reloaded = new InvertedIndex();
+		reloaded.load(compacted);
+		check("saving leaves out removed documents", reloaded.getDocuments().size() == DOCUMENTS - DOCUMENTS / 2);
+		checkExact("exact search after saving without removed documents", kept, reloaded, lines);
+		for (String line : lines) {
+			List<String> query = FileParser.parseText(line);
+			check("ranked search after saving without removed documents \"" + line + "\"",
+					kept.rankedSearch(query, false, Integer.MAX_VALUE),
+					reloaded.rankedSearch(query, false, Integer.MAX_VALUE));
+		}
+
+		ArrayList<InvertedIndex> shards = new ArrayList<InvertedIndex>();
+		for (Path file : files.subList(0, DOCUMENTS / 2)) {
+			shards.add(IndexBuilder.buildFile(updated.getDocuments(), file));
+		}
+		updated.addAll(shards, 2);
+		checkExact("exact search after merging documents back", inverted, updated, lines);
+
+		Path saved = directory.resolve("kept.bin");
+		kept.save(saved);
+		InvertedIndex loaded = new InvertedIndex();
+		loaded.load(saved);
+		checkExact("exact search after loading", kept, loaded, lines);
+	}
+
+	/**
+	 * Checks that two indexes return the same exact search results.
+	 *
+	 * @param name
+	 *            - description of the indexes
+	 * @param expected
+	 *            - index built from scratch
+	 * @param actual
+	 *            - index that was changed
+	 * @param lines
+	 *            - query lines
+	 */
+	private void checkExact(String name, InvertedIndex expected, InvertedIndex actual, String[] lines) {
+		for (String line : lines) {
+			List<String> query = FileParser.parseText(line);
+			check(name + " \"" + line + "\"", expected.exactSearch(query), actual.exactSearch(query));
+		}
+	}
+
+	/**
+	 * Checks {@link BM25} ranked search, including queries repeating a word or
+	 * holding a prefix of another query word, whose matching words must each
+	 * be weighed by the number of documents they are found in once.
+	 */
+	private void checkRanked() {
+		for (String line : new String[] { "cat", "ca", "cat dog", "ca cat", "cat cat", "c ca cat", "lazy fox",
+				"the then there", "missing" }) {
+			List<String> query = FileParser.parseText(line);
+			for (boolean exact : new boolean[] { false, true }) {
+				for (int k : new int[] { Integer.MAX_VALUE, 5 }) {
+					compare("ranked" + (exact ? " exact" : "") + " \"" + line + "\" k=" + k,
+							inverted.rankedSearch(query, exact, k), segmented.rankedSearch(query, exact, k),
+							mapped.rankedSearch(query, exact, k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that a segmented index whose words are added one at a time, and
+	 * sealed so often that every document is split over several segments,
+	 * ranks the same as the inverted index: the counts of a document must be
+	 * added up over its segments before it is scored.
+	 */
+	private void checkRankedSplit() {
+		SegmentedIndex split = new SegmentedIndex(new DocumentTable(), 256, 1 << 20);
+		DocumentTable documents = split.getDocuments();
+		for (int i = 0; i < files.size(); i++) {
+			String[] words = texts.get(i);
+			int document = documents.add(files.get(i).toAbsolutePath().normalize().toString());
+			for (int j = 0; j < words.length; j++) {
+				split.add(words[j], document, j + 1);
+			}
+			documents.setLength(document, words.length);
+		}
+		split.close();
+		check("documents are split over segments", split.segments() > files.size());
+		for (String line : new String[] { "cat", "ca", "ca cat", "cat cat", "lazy fox", "the then there" }) {
+			List<String> query = FileParser.parseText(line);
+			for (boolean exact : new boolean[] { false, true }) {
+				check("ranked split" + (exact ? " exact" : "") + " \"" + line + "\"",
+						inverted.rankedSearch(query, exact, Integer.MAX_VALUE),
+						split.rankedSearch(query, exact, Integer.MAX_VALUE));
+			}
+		}
+	}
+
+	/**
+	 * Checks boolean queries joining words with AND, OR and NOT. Besides
+	 * comparing the indexes, the inverted index is also checked against the
+	 * generic {@link BooleanQuery#evaluate(SearchableIndex, boolean, boolean, int)},
+	 * and the documents found against those worked out from the generated
+	 * text.
+	 */
+	private void checkBoolean() {
+		checkQueries("cat AND dog", "cat OR dog", "cat dog AND fox", "cat NOT dog", "cat AND NOT dog", "ca AND do NOT the",
+				"cat AND dog OR fox NOT lazy", "c AND d AND q AND b", "quick AND missing", "missing OR lazy",
+				"NOT cat", "cat AND cat", "ca AND cat NOT cats");
+	}
+
+	/**
+	 * Checks phrases in double quotes and NEAR/k proximity queries, on their
+	 * own and mixed with the other operators, the same way as
+	 * {@link #checkBoolean()}.
+	 */
+	private void checkPhrases() {
+		checkQueries("\"quick brown\"", "\"the quick brown\"", "\"ca ca\"", "\"cat dog\" OR \"dog cat\"",
+				"\"c d\"", "\"the cat\" AND lazy", "cat NOT \"cat dog\"", "\"lazy fox\" NOT \"fox jumps\"",
+				"\"missing words\"", "cat NEAR/1 dog", "cat NEAR/3 dog", "fox NEAR/2 lazy OR quick NEAR/1 brown",
+				"ca NEAR/5 do", "the NEAR/4 \"quick brown\"", "cat NEAR/3 NOT dog", "\"lazy fox\" NEAR/10 jumps",
+				"cat NEAR/3 cat", "fox NEAR/1 fox", "ca NEAR/2 cat", "c NEAR/1 ca", "qu NEAR/4 quick");
+		check("NEAR/0 is searched as a word", BooleanQuery.parse("cat NEAR/0 dog") == null);
+		BooleanQuery leading = BooleanQuery.parse("cat AND dog NEAR/01 fox");
+		check("NEAR/01 is searched as a word", leading != null && !leading.toString().contains("NEAR"));
+
+		BooleanQuery.Phrase same = BooleanQuery.parse("cat NEAR/3 cat").getClauses().get(0).getPhrases().get(0);
+		check("NEAR does not pair a word with itself", !same.matches(new int[][] { { 7 }, { 7 } }));
+		check("NEAR pairs two occurrences of a word", same.matches(new int[][] { { 4, 7 }, { 4, 7 } }));
+		BooleanQuery.Phrase prefix = BooleanQuery.parse("run NEAR/2 runner").getClauses().get(0).getPhrases().get(0);
+		check("NEAR does not pair overlapping prefixes at one position", !prefix.matches(new int[][] { { 5 }, { 5 } }));
+		check("NEAR pairs overlapping prefixes at two positions", prefix.matches(new int[][] { { 5, 9 }, { 5, 7 } }));
+		check("NEAR skips the shared position to the next one", prefix.matches(new int[][] { { 5 }, { 5, 6 } }));
+	}
+
+	/**
+	 * Checks boolean queries, exact and partial, ranked and unranked, with and
+	 * without a limit.
+	 *
+	 * @param lines
+	 *            - query lines
+	 */
+	private void checkQueries(String... lines) {
+		for (String line : lines) {
+			BooleanQuery query = BooleanQuery.parse(line);
+			if (!check("parse \"" + line + "\"", query != null)) {
+				continue;
+			}
+			for (boolean exact : new boolean[] { false, true }) {
+				for (boolean ranked : new boolean[] { false, true }) {
+					for (int k : new int[] { Integer.MAX_VALUE, 5 }) {
+						String name = (ranked ? "ranked " : "") + (exact ? "exact " : "") + "boolean \"" + line
+								+ "\" k=" + k;
+						ArrayList<SearchResult> expected = inverted.search(query, exact, ranked, k);
+						compare(name, expected, segmented.search(query, exact, ranked, k),
+								mapped.search(query, exact, ranked, k));
+						check(name + " (evaluated)", expected, query.evaluate(inverted, exact, ranked, k));
+						if (k == Integer.MAX_VALUE) {
+							checkDocuments(name + " (documents)", query, exact, expected);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that a boolean query found exactly the documents whose generated
+	 * text matches it.
+	 *
+	 * @param name
+	 *            - description of the search
+	 * @param query
+	 *            - boolean query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @param results
+	 *            - every result of the query
+	 */
+	private void checkDocuments(String name, BooleanQuery query, boolean exact, List<SearchResult> results) {
+		TreeSet<String> expected = new TreeSet<String>();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			for (BooleanQuery.Clause clause : query.getClauses()) {
+				if (matches(clause, texts.get(i), exact)) {
+					expected.add(files.get(i).toString());
+					break;
+				}
+			}
+		}
+		TreeSet<String> actual = new TreeSet<String>();
+		for (SearchResult result : results) {
+			actual.add(result.getPath());
+		}
+		if (!check(name, expected.equals(actual))) {
+			System.out.println("  expected: " + expected);
+			System.out.println("  actual:   " + actual);
+		}
+	}
+
+	/**
+	 * Checks whether the text of a document matches a clause of a boolean
+	 * query.
+	 *
+	 * @param clause
+	 *            - clause of a boolean query
+	 * @param text
+	 *            - words of the document
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @return true if the document holds every required word and phrase and
+	 *         no excluded one
+	 */
+	private static boolean matches(BooleanQuery.Clause clause, String[] text, boolean exact) {
+		for (String word : clause.getRequired()) {
+			if (!holds(text, word, exact)) {
+				return false;
+			}
+		}
+		for (String word : clause.getExcluded()) {
+			if (holds(text, word, exact)) {
+				return false;
+			}
+		}
+		for (BooleanQuery.Phrase phrase : clause.getPhrases()) {
+			if (!holds(text, phrase, exact)) {
+				return false;
+			}
+		}
+		for (BooleanQuery.Phrase phrase : clause.getExcludedPhrases()) {
+			if (holds(text, phrase, exact)) {
+				return false;
+			}
+		}
+		return !clause.getRequired().isEmpty();
+	}
+
+	/**
+	 * Checks whether the text of a document holds a phrase, trying every
+	 * position, or for NEAR, every pair of two different positions.
+	 *
+	 * @param text
+	 *            - words of the document
+	 * @param phrase
+	 *            - phrase of a boolean query
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @return true if the text holds the phrase
+	 */
+	private static boolean holds(String[] text, BooleanQuery.Phrase phrase, boolean exact) {
+		List<String> words = phrase.getWords();
+		int distance = phrase.getDistance();
+		for (int i = 0; i < text.length; i++) {
+			if (distance > 0) {
+				for (int j = Math.max(0, i - distance); j <= Math.min(text.length - 1, i + distance); j++) {
+					if (j != i && matches(text[i], words.get(0), exact) && matches(text[j], words.get(1), exact)) {
+						return true;
+					}
+				}
+				continue;
+			}
+			int w = 0;
+			while (w < words.size() && i + w < text.length && matches(text[i + w], words.get(w), exact)) {
+				w++;
+			}
+			if (w == words.size()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a word of a document matches a query word.
+	 *
+	 * @param found
+	 *            - word of the document
+	 * @param word
+	 *            - cleaned query word
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @return true if the words match
+	 */
+	private static boolean matches(String found, String word, boolean exact) {
+		return exact ? found.equals(word) : found.startsWith(word);
+	}
+
+	/**
+	 * Checks whether the text of a document holds a query word.
+	 *
+	 * @param text
+	 *            - words of the document
+	 * @param word
+	 *            - cleaned query word
+	 * @param exact
+	 *            - true to match whole words, false to match prefixes
+	 * @return true if a word of the text matches
+	 */
+	private static boolean holds(String[] text, String word, boolean exact) {
+		for (String found : text) {
+			if (matches(found, word, exact)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks that partial searches answered from the aggregates of the prefix
+	 * cache, alone and together with a prefix index, return the same results
+	 * as searches walking the words, both when the aggregates are first built
+	 * and when they are reused, and that aggregates are dropped when the index
+	 * changes.
+	 */
+	private void checkPrefixCache() {
+		String[] lines = { "c", "ca", "cat", "cata", "catb", "cath", "do", "c dog", "ca cat", "catalog" };
+		for (int prefixLength : new int[] { 0, 2 }) {
+			String name = "prefix cache" + (prefixLength > 0 ? " with prefix index" : "");
+			InvertedIndex cached = new InvertedIndex();
+			IndexBuilder.build(cached, files);
+			cached.setPrefixLength(prefixLength);
+			InvertedIndex walked = new InvertedIndex();
+			IndexBuilder.build(walked, files);
+			walked.setPrefixCacheSize(0);
+
+			for (int pass = 1; pass <= 2; pass++) {
+				for (String line : lines) {
+					List<String> query = FileParser.parseText(line);
+					for (int k : new int[] { Integer.MAX_VALUE, 5 }) {
+						String search = name + " \"" + line + "\" k=" + k + " pass " + pass;
+						ArrayList<SearchResult> expected = walked.search(query, k);
+						check(search, expected, cached.search(query, k));
+						if (pass == 1) {
+							compare(search, expected, segmented.search(query, k), mapped.search(query, k));
+						}
+					}
+				}
+			}
+			PrefixCache cache = cached.getPrefixCache();
+			check(name + " holds aggregates", cache != null && cache.size() > 0 && cache.getHits() > 0);
+
+			String extra = directory.resolve("extra.txt").toString();
+			for (InvertedIndex index : new InvertedIndex[] { cached, walked }) {
+				index.add("catalog", extra, 1);
+				index.add("catha", extra, 2);
+			}
+			check(name + " dropped after a change", cached.getPrefixCache() == null);
+			for (String line : lines) {
+				List<String> query = FileParser.parseText(line);
+				check(name + " \"" + line + "\" after a change", walked.search(query), cached.search(query));
+			}
+		}
+	}
+
+	/**
+	 * Checks that both query parsers reuse cached results only in the index
+	 * and generation they were searched in: after the index changes, and in
+	 * another index that happens to have the same generation, every line must
+	 * be searched again.
+	 *
+	 * @throws IOException
+	 *             if the queries, results or an index cannot be written
+	 */
+	private void checkQueryCache() throws IOException {
+		Path queries = directory.resolve("queries.txt");
+		List<String> lines = Arrays.asList("cat", "ca dog", "the quick", "missing");
+		Files.write(queries, lines, StandardCharsets.UTF_8);
+
+		// both mapped indexes have generation 0
+		InvertedIndex half = new InvertedIndex();
+		IndexBuilder.build(half, new ArrayList<Path>(files.subList(0, DOCUMENTS / 2)));
+		Path saved = directory.resolve("half.bin");
+		half.save(saved);
+		MappedIndex other = new MappedIndex(saved);
+
+		QueryParser single = new QueryParser();
+		QueryParser singleUncached = new QueryParser();
+		singleUncached.setCacheSize(0);
+		checkQueryCache("query parser", index -> {
+			single.SearchHelp(index, queries);
+			return printed(single::print);
+		}, index -> {
+			singleUncached.SearchHelp(index, queries);
+			return printed(singleUncached::print);
+		}, single.getCache(), lines.size(), other);
+
+		MultiQueryParser multi = new MultiQueryParser(2);
+		MultiQueryParser multiUncached = new MultiQueryParser(2);
+		multiUncached.setCacheSize(0);
+		try {
+			checkQueryCache("multithreaded query parser", index -> {
+				multi.searchHelp(index, queries);
+				return printed(multi::print);
+			}, index -> {
+				multiUncached.searchHelp(index, queries);
+				return printed(multiUncached::print);
+			}, multi.getCache(), lines.size(), other);
+		} finally {
+			multi.shutdown();
+			multiUncached.shutdown();
+		}
+	}
+
+	/**
+	 * Checks the query cache of one query parser against a query parser of the
+	 * same kind that caches nothing.
+	 *
+	 * @param name
+	 *            - kind of query parser
+	 * @param cached
+	 *            - searches with the caching parser
+	 * @param uncached
+	 *            - searches with the parser that caches nothing
+	 * @param cache
+	 *            - cache of the caching parser
+	 * @param lines
+	 *            - number of lines in the query file
+	 * @param other
+	 *            - mapped index of part of the corpus
+	 * @throws IOException
+	 *             if the results cannot be written
+	 */
+	private void checkQueryCache(String name, Searcher cached, Searcher uncached, QueryCache cache, int lines,
+			MappedIndex other) throws IOException {
+		InvertedIndex changing = new InvertedIndex();
+		IndexBuilder.build(changing, files);
+
+		String before = cached.search(changing);
+		check(name + " first search", uncached.search(changing), before);
+		long hits = cache.getHits();
+		check(name + " search again", before, cached.search(changing));
+		check(name + " reuses every line", cache.getHits() - hits == lines);
+
+		changing.add("cat", directory.resolve("extra.txt").toString(), 1);
+		String after = cached.search(changing);
+		check(name + " search after a change", uncached.search(changing), after);
+		check(name + " sees the change", !before.equals(after));
+
+		cached.search(mapped);
+		check(name + " search another index of the same generation", uncached.search(other),
+				cached.search(other));
+	}
+
+	/**
+	 * Checks that the segmented and mapped index returned the same results as
+	 * the inverted index, in the same order and with the same scores.
+	 *
+	 * @param name
+	 *            - description of the search, printed if the results differ
+	 * @param expected
+	 *            - results of the inverted index
+	 * @param segmented
+	 *            - results of the segmented index
+	 * @param mapped
+	 *            - results of the mapped index
+	 */
+	private void compare(String name, List<SearchResult> expected, List<SearchResult> segmented,
+			List<SearchResult> mapped) {
+		check(name + " (segmented)", expected, segmented);
+		check(name + " (mapped)", expected, mapped);
+	}
+
+	/**
+	 * Checks that two lists of results are the same, printing both if not.
+	 *
+	 * @param name
+	 *            - description of the search
+	 * @param expected
+	 *            - expected results
+	 * @param actual
+	 *            - results to check
+	 */
+	private void check(String name, List<SearchResult> expected, List<SearchResult> actual) {
+		boolean same = expected.size() == actual.size();
+		for (int i = 0; same && i < expected.size(); i++) {
+			SearchResult a = expected.get(i);
+			SearchResult b = actual.get(i);
+			same = a.toString().equals(b.toString()) && Math.abs(a.getScore() - b.getScore()) <= TOLERANCE
+					* Math.max(1, Math.abs(a.getScore()));
+		}
+		if (!check(name, same)) {
+			System.out.println("  expected: " + describe(expected));
+			System.out.println("  actual:   " + describe(actual));
+		}
+	}
+
+	/**
+	 * Checks that two printed results files are the same, printing both if
+	 * not.
+	 *
+	 * @param name
+	 *            - description of the search
+	 * @param expected
+	 *            - expected results
+	 * @param actual
+	 *            - results to check
+	 */
+	private void check(String name, String expected, String actual) {
+		if (!check(name, expected.equals(actual))) {
+			System.out.println("  expected:\n" + expected);
+			System.out.println("  actual:\n" + actual);
+		}
+	}
+
+	/**
+	 * Counts a check, printing its name if it failed.
+	 *
+	 * @param name
+	 *            - description of the check
+	 * @param passed
+	 *            - whether the check passed
+	 * @return whether the check passed
+	 */
+	private boolean check(String name, boolean passed) {
+		checks++;
+		if (!passed) {
+			failures++;
+			System.out.println("FAILED " + name);
+		}
+		return passed;
+	}
+
+	/**
+	 * Formats results with their scores for a failure message.
+	 *
+	 * @param results
+	 *            - search results
+	 * @return one line listing every result
+	 */
+	private static String describe(List<SearchResult> results) {
+		StringBuilder line = new StringBuilder();
+		for (SearchResult result : results) {
+			line.append('[').append(result).append(", ").append(result.getScore()).append(']');
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Prints the results of a query parser to a file and reads them back.
+	 *
+	 * @param print
+	 *            - print method of the query parser
+	 * @return printed results
+	 * @throws IOException
+	 *             if the results cannot be read
+	 */
+	private String printed(Consumer<String> print) throws IOException {
+		Path results = directory.resolve("results.txt");
+		print.accept(results.toString());
+		return new String(Files.readAllBytes(results), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Deletes the temporary corpus and saved index.
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	private void delete() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Searches every line of the query file with a query parser.
+	 */
+	private interface Searcher {
+
+		/**
+		 * Searches every line of the query file in an index.
+		 *
+		 * @param index
+		 *            - index to search
+		 * @return printed results
+		 * @throws IOException
+		 *             if the queries or results cannot be read
+		 */
+		String search(SearchableIndex index) throws IOException;
+	}
+}